@@ -76,6 +76,14 @@ dependencies {
 	// for creating tar archive for uploading files to docker daemon
 	implementation("org.apache.commons:commons-compress:1.21")
 	implementation("com.google.code.gson:gson:2.9.0")
+	
+	testImplementation(platform("org.junit:junit-bom:5.10.2"))
+	testImplementation("org.junit.jupiter:junit-jupiter")
+	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+	useJUnitPlatform()
 }
 
 // set encoding for all compilation passes
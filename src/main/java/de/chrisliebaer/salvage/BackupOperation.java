@@ -3,159 +3,630 @@ package de.chrisliebaer.salvage;
 import com.github.dockerjava.api.DockerClient;
 import de.chrisliebaer.salvage.entity.BackupMeta;
 import de.chrisliebaer.salvage.entity.SalvageCrane;
+import de.chrisliebaer.salvage.entity.SalvageTide;
 import de.chrisliebaer.salvage.entity.SalvageVolume;
 import de.chrisliebaer.salvage.reporting.TideLog;
 import de.chrisliebaer.salvage.reporting.VolumeLog;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.logging.log4j.ThreadContext;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.IdentityHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.ThreadFactory;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 @Slf4j
 public class BackupOperation implements AutoCloseable {
 	
-	private final Object lock = new Object();
+	/**
+	 * Upper bound of cranes prepared ahead of time, since prepared cranes occupy resources on the docker daemon until they are started.
+	 */
+	private static final int PREWARM_LIMIT = 8;
+	
+	/**
+	 * Reason reported for volumes that are skipped because the tide exceeded its timeout.
+	 */
+	public static final String TIMEOUT_REASON = "skipped, tide exceeded its timeout";
 	
 	private final DockerClient docker;
-	private final ExecutorService executor;
+	private final int maxConcurrent;
+	private final int maxPerDevice;
+	private final Optional<PressureController> pressure;
+	private final Optional<Instant> deadline;
+	private final Optional<MetaStore> metaStore;
+	private final Optional<SnapshotStore> snapshots;
 	private final Map<SalvageCrane, CranePool> cranes;
 	private final BackupMeta.HostMeta hostMeta;
 	private final TideLog tideLog;
 	
-	public BackupOperation(DockerClient docker, int maxConcurrent, Collection<SalvageCrane> cranes, BackupMeta.HostMeta hostMeta, TideLog tideLog) {
+	/**
+	 * Cranes that have been prepared ahead of time, only accessed by the thread calling into this operation.
+	 */
+	private final Map<Target, SalvageVessel> prewarmed = new HashMap<>();
+	
+	/**
+	 * Reason reported for volumes that are cut short by the deadline, if the operation yields to other work rather than running out of time.
+	 */
+	private Optional<String> yieldReason = Optional.empty();
+	
+	/**
+	 * Set once the deadline actually prevented work, as opposed to merely having passed after all volumes were done.
+	 */
+	private volatile boolean cutShort;
+	
+	/**
+	 * @param maxPerDevice Maximum number of concurrent backups of volumes stored on the same device.
+	 * @param cranes       Pools of all cranes, shared with other executions so crane limits are enforced across tides.
+	 * @param pressure     Lowers the number of concurrent backups while the host is under pressure.
+	 * @param deadline     Point in time after which running cranes are killed and no further volumes are backed up.
+	 * @param metaStore    Metadata written ahead of time, which is mounted into cranes instead of uploading it.
+	 * @param snapshots    Staging copies of volumes, which are backed up instead of the original volumes.
+	 */
+	public BackupOperation(DockerClient docker, int maxConcurrent, int maxPerDevice, Optional<PressureController> pressure, Optional<Instant> deadline,
+						   Optional<MetaStore> metaStore, Optional<SnapshotStore> snapshots, Map<SalvageCrane, CranePool> cranes, BackupMeta.HostMeta hostMeta, TideLog tideLog) {
 		this.docker = docker;
+		this.deadline = deadline;
+		this.metaStore = metaStore;
+		this.snapshots = snapshots;
+		this.maxPerDevice = maxPerDevice;
+		this.pressure = pressure;
+		this.cranes = cranes;
+		this.maxConcurrent = maxConcurrent;
 		this.hostMeta = hostMeta;
 		this.tideLog = tideLog;
-		
-		// each worker will use its own docker client, we cant fully prevent networks errors, so later code needs to handle unexpected loss of connection to docker
-		executor = Executors.newFixedThreadPool(maxConcurrent, new ThreadFactory() {
-			private int counter;
-			
-			@Override
-			public Thread newThread(Runnable r) {
-				var t = new Thread(r, "CraneShip" + counter++);
-				t.setDaemon(true);
-				t.setUncaughtExceptionHandler((t1, e) -> log.error("fatal uncaught exception in thread {}", t1.getName(), e));
-				return t;
-			}
-		});
-		
-		// create pool for each crane to pull tickets from
-		this.cranes = new IdentityHashMap<>(cranes.size());
-		for (SalvageCrane crane : cranes)
-			this.cranes.put(crane, CranePool.fromCrane(crane));
 	}
 	
 	@Override
 	public void close() {
-		executor.shutdown();
+		discardPrewarmed();
 	}
 	
-	public void backupVolumes(SalvageCrane crane, Collection<SalvageVolume> volumes) {
-		var remaining = new ArrayList<>(volumes);
-		ArrayList<Future<Void>> futures = new ArrayList<>();
-		var completionService = new ExecutorCompletionService<Void>(executor);
-		var taskCounter = 0;
-		while (!remaining.isEmpty()) {
-			
-			boolean craneFound = false;
-			
-			// match cranes to volumes, if available, otherwise wait for crane to become available again
-			var it = remaining.iterator();
+	/**
+	 * Prepares cranes for the volumes that will be started first, so creating containers, uploading metadata and attaching happens before containers of the group are
+	 * stopped. Only as many cranes are prepared as can be started right away, which takes the tide limit, free slots of each crane pool and device limits into account.
+	 * Failures are logged and the affected volumes are prepared once they are started.
+	 *
+	 * @param volumes Volumes in the order they will be backed up, mapped to the cranes that will back them up.
+	 * @param devices Devices the volumes are stored on. Volumes without known device are not limited.
+	 */
+	public void prewarm(Map<SalvageVolume, List<SalvageCrane>> volumes, Map<SalvageVolume, String> devices) {
+		var budget = Math.min(limit(), PREWARM_LIMIT);
+		var perCrane = new HashMap<SalvageCrane, Integer>();
+		var perDevice = new HashMap<String, Integer>();
+		for (var entry : volumes.entrySet()) {
+			var volume = entry.getKey();
+			var device = devices.get(volume);
 			
-			// lock around iteration over cranes, since worker might return crane we already checked (makes semaphore rather pointless, but whatever)
-			synchronized (lock) {
-				while (it.hasNext()) {
-					var volume = it.next();
-					
-					// check for crane availability
-					var semaphore = cranes.get(crane).semaphore;
-					if (semaphore.tryAcquire()) {
-						
-						// crane found, remove volume from remaining list and submit backup task
+			// later cranes of sequential tides only start once the volume has been backed up by the previous crane
+			var volumeCranes = sequential() ? entry.getValue().subList(0, 1) : entry.getValue();
+			for (var crane : volumeCranes) {
+				if (prewarmed.size() >= budget)
+					break;
+				if (device != null && perDevice.getOrDefault(device, 0) >= maxPerDevice)
+					break;
+				
+				// batches are formed once slots are granted, but batching already saves most of the per-volume startup cost
+				var target = new Target(volume, crane);
+				if (crane.batched() || prewarmed.containsKey(target) || perCrane.getOrDefault(crane, 0) >= freeSlots(crane))
+					continue;
+				
+				var vessel = vessel(List.of(volume), crane, Map.of(volume, tideLog.getVolumeLog(volume, crane)));
+				try {
+					vessel.prepare();
+					prewarmed.put(target, vessel);
+					perCrane.merge(crane, 1, Integer::sum);
+					if (device != null)
+						perDevice.merge(device, 1, Integer::sum);
+				} catch (Throwable e) {
+					log.warn("failed to prepare crane '{}' for volume '{}' ahead of time", crane.name(), volume.name(), e);
+				}
+			}
+		}
+		log.debug("prepared {} cranes ahead of time", prewarmed.size());
+	}
+	
+	/**
+	 * Removes all cranes prepared ahead of time. Must be called if the volumes they were prepared for won't be backed up, such as when the group fails to stop its
+	 * containers.
+	 */
+	public void discardPrewarmed() {
+		prewarmed.values().forEach(SalvageVessel::discard);
+		prewarmed.clear();
+	}
+	
+	/**
+	 * Makes this operation yield to other work once its deadline has passed. Volumes that haven't been started yet and running cranes killed by the deadline are reported
+	 * as skipped instead of failed. Must be called before volumes are backed up.
+	 *
+	 * @param reason Reason reported for each volume that has been cut short.
+	 */
+	public void yieldOnExpiry(String reason) {
+		yieldReason = Optional.of(reason);
+	}
+	
+	/**
+	 * Backs up the given volumes, each on its assigned crane. Volumes are queued per crane and slots are requested from the shared crane pools, as long as the tide limit
+	 * has not been reached. Each request is made on behalf of specific volumes, which are only picked if their device has not reached its limit, so slots are filled with
+	 * volumes on other devices instead. Cranes supporting batches receive up to their batch size of volumes per slot. The dispatcher only wakes up once a slot has been
+	 * granted or a running backup finished, so different cranes work in parallel without polling.
+	 * <p>
+	 * Volumes that failed in a way their crane's retry policy considers transient are queued again behind all other volumes once their backoff has passed. Retries are
+	 * only attempted if the containers of the group can stay down long enough without exceeding their downtime budget.
+	 * <p>
+	 * Volumes with multiple cranes are queued on all of them at once, unless the tide runs its cranes in sequence, in which case a volume is only queued on its next crane
+	 * once the previous crane is done with it, regardless of its outcome.
+	 * <p>
+	 * Shards of a volume are scheduled like separate volumes, but never share a batch, since they are mounted at the same path.
+	 *
+	 * @param volumes       Volumes to back up, mapped to the cranes that should back them up.
+	 * @param devices       Devices the volumes are stored on. Volumes without known device are not limited.
+	 * @param downtimeLimit Point in time at which the first container of the group exceeds its downtime budget.
+	 */
+	public void backupVolumes(Map<SalvageVolume, List<SalvageCrane>> volumes, Map<SalvageVolume, String> devices, Optional<Instant> downtimeLimit) {
+		var queues = new LinkedHashMap<SalvageCrane, ArrayDeque<SalvageVolume>>();
+		var following = new HashMap<SalvageVolume, ArrayDeque<SalvageCrane>>();
+		for (var entry : volumes.entrySet()) {
+			entry.getValue().forEach(crane -> queues.computeIfAbsent(crane, c -> new ArrayDeque<>()));
+			if (sequential()) {
+				var volumeCranes = new ArrayDeque<>(entry.getValue());
+				queues.get(volumeCranes.removeFirst()).add(entry.getKey());
+				following.put(entry.getKey(), volumeCranes);
+			} else {
+				entry.getValue().forEach(crane -> queues.get(crane).add(entry.getKey()));
+			}
+		}
+		
+		// pools and workers report to this queue, which are the only events that can change what we are able to do
+		var events = new LinkedBlockingQueue<Event>();
+		var clients = new LinkedHashMap<SalvageCrane, CranePool.Client>();
+		var reserved = new HashMap<SalvageCrane, ArrayDeque<List<SalvageVolume>>>();
+		for (var crane : queues.keySet()) {
+			clients.put(crane, cranes.get(crane).register(tideLog.tide().name(), () -> events.add(new Event(EventType.GRANTED, crane, List.of(), List.of()))));
+			reserved.put(crane, new ArrayDeque<>());
+		}
+		
+		var deviceLoad = new HashMap<String, Integer>();
+		var attempts = new HashMap<Target, Integer>();
+		var retries = new ArrayList<Retry>();
+		var running = 0;
+		var outstanding = 0;
+		var expired = false;
+		var completed = false;
+		
+		// every crane runs on its own virtual thread, which is bound to this call, so no crane outlives the group it belongs to
+		var scope = new TaskScope("CraneShip");
+		try {
+			while (true) {
+				// once the tide is out of time, volumes that haven't been started yet are skipped, running cranes are killed by their own watchdog
+				if (!expired && expired()) {
+					expired = true;
+					if (yieldReason.isPresent())
+						log.info("tide '{}' yields ({}), skipping remaining volumes", tideLog.tide().name(), yieldReason.get());
+					else
+						log.warn("tide '{}' exceeded its timeout, skipping remaining volumes", tideLog.tide().name());
+					clients.values().forEach(CranePool.Client::close);
+					for (var entry : queues.entrySet()) {
+						expire(entry.getValue(), entry.getKey());
+						entry.getValue().clear();
+					}
+					for (var entry : reserved.entrySet()) {
+						entry.getValue().forEach(batch -> expire(batch, entry.getKey()));
+						entry.getValue().clear();
+					}
+					for (var retry : retries) {
+						cutShort = true;
+						tideLog.getVolumeLog(retry.volume(), retry.crane()).failure(retry.reason() + " (not retried, tide exceeded its timeout)");
+					}
+					retries.clear();
+					for (var entry : following.entrySet())
+						entry.getValue().forEach(crane -> expire(List.of(entry.getKey()), crane));
+					following.clear();
+					outstanding = 0;
+				}
+				
+				// retries go to the back of their crane's queue once their backoff has passed
+				var now = Instant.now();
+				for (var it = retries.iterator(); it.hasNext(); ) {
+					var retry = it.next();
+					if (!retry.readyAt().isAfter(now)) {
+						queues.get(retry.crane()).addLast(retry.volume());
 						it.remove();
-						var volumeLog = tideLog.getVolumeLog(volume, crane);
-						log.trace("found instance crane '{}' for volume '{}', deploying", crane.name(), volume.name());
-						var future = completionService.submit(() -> {
-							try {
-								ThreadContext.put("volume", volume.name());
-								log.info("starting backup for volume '{}' on crane '{}'", volume.name(), crane.name());
-								backupVolume(volume, crane, volumeLog);
-							} finally {
-								log.trace("returning crane '{}' to pool", crane.name());
-								synchronized (lock) {
-									semaphore.release();
-									lock.notifyAll();
-								}
-								ThreadContext.remove("volume");
-							}
-							return null;
-						});
-						taskCounter++;
-						futures.add(future);
 					}
 				}
 				
-				// if no crane was found for a volume, wait for a crane to become available again
-				if (!craneFound) {
-					try {
-						lock.wait();
-					} catch (InterruptedException ignore) {
-						// set interrupt flag and exit loop, this will cause remaining volumes to be skipped and trigger cancel logic in waiting loop
-						Thread.currentThread().interrupt();
-						break;
+				// request slots for queued volumes, spread over all cranes, without exceeding the tide or device limits
+				var limit = limit();
+				var progress = true;
+				while (progress && running + outstanding < limit) {
+					progress = false;
+					for (var entry : queues.entrySet()) {
+						var crane = entry.getKey();
+						if (running + outstanding >= limit)
+							continue;
+						
+						var batch = new ArrayList<SalvageVolume>();
+						for (var volume : entry.getValue()) {
+							if (batch.size() >= crane.batchSize())
+								break;
+							
+							// shards share the name and mount path of their volume, so each of them needs its own crane
+							if (volume.shard().isPresent() && !batch.isEmpty())
+								continue;
+							
+							var device = devices.get(volume);
+							if (device != null && deviceLoad.getOrDefault(device, 0) >= maxPerDevice)
+								continue;
+							
+							batch.add(volume);
+							if (device != null)
+								deviceLoad.merge(device, 1, Integer::sum);
+							if (volume.shard().isPresent())
+								break;
+						}
+						if (batch.isEmpty())
+							continue;
+						
+						entry.getValue().removeAll(batch);
+						reserved.get(crane).add(batch);
+						outstanding++;
+						progress = true;
+						clients.get(crane).request();
+					}
+				}
+				
+				if (running == 0 && outstanding == 0 && retries.isEmpty()) {
+					var pending = queues.values().stream().mapToInt(ArrayDeque::size).sum();
+					if (pending > 0)
+						throw new IllegalStateException(pending + " volumes remaining, but tide doesn't allow any concurrent backups");
+					completed = true;
+					break;
+				}
+				
+				// pressure and deadline need to be checked periodically, even if nothing else happens
+				Event event;
+				var timeout = waitTimeout(retries);
+				if (timeout.isPresent()) {
+					event = events.poll(Math.max(timeout.get().toMillis(), 0), TimeUnit.MILLISECONDS);
+					if (pressure.isPresent())
+						pressure.get().update(running);
+					if (event == null)
+						continue;
+				} else {
+					event = events.take();
+				}
+				
+				var crane = event.crane();
+				switch (event.type()) {
+					case GRANTED -> {
+						// requests might have been withdrawn after the slot has already been granted
+						if (reserved.get(crane).isEmpty()) {
+							cranes.get(crane).release();
+						} else {
+							outstanding--;
+							running++;
+							var batch = reserved.get(crane).remove();
+							var batchAttempts = new HashMap<SalvageVolume, Integer>();
+							for (var volume : batch)
+								batchAttempts.put(volume, attempts.merge(new Target(volume, crane), 1, Integer::sum));
+							deploy(scope, batch, crane, batchAttempts, events);
+						}
+					}
+					case FINISHED -> {
+						running--;
+						for (var volume : event.volumes()) {
+							var device = devices.get(volume);
+							if (device != null)
+								deviceLoad.merge(device, -1, Integer::sum);
+						}
+						var retried = new HashSet<SalvageVolume>();
+						for (var failure : event.failures()) {
+							var retry = scheduleRetry(failure, crane, downtimeLimit);
+							if (retry.isPresent()) {
+								retries.add(retry.get());
+								retried.add(failure.volume());
+							}
+						}
+						
+						// volumes that are done with this crane move on to their next crane
+						for (var volume : event.volumes()) {
+							var next = following.get(volume);
+							if (retried.contains(volume) || next == null || next.isEmpty())
+								continue;
+							
+							var nextCrane = next.removeFirst();
+							log.debug("volume '{}' is done on crane '{}', continuing on crane '{}'", volume.name(), crane.name(), nextCrane.name());
+							queues.get(nextCrane).addLast(volume);
+						}
 					}
 				}
 			}
+		} catch (InterruptedException e) {
+			// remaining volumes will be skipped, running cranes are killed by their vessels once the scope is cancelled
+			log.info("interrupt received, trying to stop active backup tasks");
+			Thread.currentThread().interrupt();
+		} finally {
+			// withdraw outstanding requests and return slots that have been granted but never used
+			clients.values().forEach(CranePool.Client::close);
+			discardPrewarmed();
+			for (var event : events) {
+				if (event.type() == EventType.GRANTED)
+					cranes.get(event.crane()).release();
+			}
+			
+			// volumes waiting for their retry have been attempted already, so their last failure is what we report
+			for (var retry : retries)
+				tideLog.getVolumeLog(retry.volume(), retry.crane()).failure(retry.reason());
+			
+			// we must not return while cranes are still using volumes, if the dispatcher failed, nobody is left to wait for them, so they are killed
+			if (!completed)
+				scope.cancel();
+			scope.join();
+			
+			// only left over if the dispatcher didn't complete, retries won't happen anymore
+			for (var event : events) {
+				for (var failure : event.failures())
+					tideLog.getVolumeLog(failure.volume(), event.crane()).failure(failure.reason());
+			}
 		}
 		
-		// wait for remaining tasks to finish
-		boolean interrupted = false;
-		for (int i = 0; i < taskCounter; i++) {
+		for (var entry : clients.entrySet()) {
+			var client = entry.getValue();
+			log.debug("waited {} for {} slots of crane '{}'", client.waited(), client.grants(), entry.getKey().name());
+		}
+	}
+	
+	/**
+	 * @return {@code true} if the deadline of this operation has passed.
+	 */
+	public boolean expired() {
+		return deadline.map(d -> !Instant.now().isBefore(d)).orElse(false);
+	}
+	
+	/**
+	 * @return {@code true} if the deadline of this operation caused volumes to be skipped, cranes to be killed or retries to be dropped.
+	 */
+	public boolean cutShort() {
+		return cutShort;
+	}
+	
+	/**
+	 * Marks the given volumes as failed without backing them up. Cranes prepared ahead of time are discarded, since they might belong to skipped volumes.
+	 *
+	 * @param volumes Volumes to skip, mapped to the cranes that would have backed them up.
+	 * @param reason  Reason reported for each volume.
+	 */
+	public void skipVolumes(Map<SalvageVolume, List<SalvageCrane>> volumes, String reason) {
+		discardPrewarmed();
+		if (TIMEOUT_REASON.equals(reason) && !volumes.isEmpty())
+			cutShort = true;
+		for (var entry : volumes.entrySet()) {
+			for (var crane : entry.getValue())
+				skip(List.of(entry.getKey()), crane, reason);
+		}
+	}
+	
+	private boolean sequential() {
+		return tideLog.tide().craneMode() == SalvageTide.CraneMode.SEQUENTIAL;
+	}
+	
+	private boolean verify() {
+		return tideLog.tide().type() == SalvageTide.TideType.VERIFY;
+	}
+	
+	private SalvageVessel vessel(List<SalvageVolume> batch, SalvageCrane crane, Map<SalvageVolume, VolumeLog> volumeLogs) {
+		if (verify())
+			return SalvageVessel.verify(docker, batch, crane, hostMeta, volumeLogs);
+		return new SalvageVessel(docker, batch, crane, hostMeta, volumeLogs, metaStore, snapshots);
+	}
+	
+	private void skip(Collection<SalvageVolume> volumes, SalvageCrane crane, String reason) {
+		for (var volume : volumes) {
+			var volumeLog = tideLog.getVolumeLog(volume, crane);
 			
-			try {
-				var future = completionService.take();
-			} catch (InterruptedException e) {
-				// if not already aborted, cancel remaining tasks, and keep ignoring further interrupts until done waiting
-				if (!interrupted) {
-					log.info("interrupt received, trying to stop active backup tasks");
-					for (var future : futures)
-						future.cancel(true);
-					interrupted = true;
-				}
-			}
+			// volumes waiting for a retry have been started already
+			if (!volumeLog.getStopWatch().isStarted())
+				volumeLog.start();
+			volumeLog.failure(reason);
+		}
+	}
+	
+	/**
+	 * Reports volumes that have been cut short by the deadline, either as skipped if this operation yields, or as failed.
+	 */
+	private void expire(Collection<SalvageVolume> volumes, SalvageCrane crane) {
+		if (!volumes.isEmpty())
+			cutShort = true;
+		if (yieldReason.isEmpty()) {
+			skip(volumes, crane, TIMEOUT_REASON);
+			return;
+		}
+		for (var volume : volumes)
+			tideLog.getVolumeLog(volume, crane).skipped(yieldReason.get());
+	}
+	
+	/**
+	 * Decides if a failed volume will be attempted again. Volumes that won't be retried are marked as failed right away.
+	 *
+	 * @return The scheduled retry, if any.
+	 */
+	private Optional<Retry> scheduleRetry(Failure failure, SalvageCrane crane, Optional<Instant> downtimeLimit) {
+		var volumeLog = tideLog.getVolumeLog(failure.volume(), crane);
+		var readyAt = Instant.now().plus(crane.retry().backoff(failure.attempt()));
+		
+		// previous attempt is the best guess for how long the retry will keep containers down
+		var finishedAt = readyAt.plus(failure.elapsed());
+		if (downtimeLimit.isPresent() && finishedAt.isAfter(downtimeLimit.get())) {
+			log.warn("not retrying volume '{}', since containers would exceed their downtime budget", failure.volume().name());
+			volumeLog.failure(failure.reason() + " (not retried, would exceed downtime budget)");
+			return Optional.empty();
+		}
+		if (deadline.isPresent() && readyAt.isAfter(deadline.get())) {
+			cutShort = true;
+			log.warn("not retrying volume '{}', since tide would exceed its timeout", failure.volume().name());
+			volumeLog.failure(failure.reason() + " (not retried, tide exceeded its timeout)");
+			return Optional.empty();
 		}
 		
-		// reapply interrupted flag, if interrupt was received
-		if (interrupted)
-			Thread.currentThread().interrupt();
+		log.info("retrying volume '{}' on crane '{}' in {} after attempt {} of {} failed, keeping containers down for about {} longer", failure.volume().name(), crane.name(),
+				SalvageMain.formatDuration(Duration.between(Instant.now(), readyAt)), failure.attempt(), crane.retry().attempts(),
+				SalvageMain.formatDuration(Duration.between(Instant.now(), finishedAt)));
+		return Optional.of(new Retry(failure.volume(), crane, readyAt, failure.reason()));
 	}
 	
-	private void backupVolume(SalvageVolume volume, SalvageCrane crane, VolumeLog volumeLog) {
-		try {
-			volumeLog.start();
-			var vessel = new SalvageVessel(docker, volume, crane, hostMeta, volumeLog);
-			vessel.start();
-			volumeLog.success();
-		} catch (Throwable e) {
-			log.error("error while backing up volume '{}'", volume.name(), e);
-			volumeLog.failure(e);
+	private Optional<Duration> waitTimeout(List<Retry> retries) {
+		var now = Instant.now();
+		var timeout = pressure.map(PressureController::interval);
+		var wakeups = new ArrayList<Instant>();
+		deadline.ifPresent(wakeups::add);
+		retries.forEach(retry -> wakeups.add(retry.readyAt()));
+		for (var wakeup : wakeups) {
+			var remaining = Duration.between(now, wakeup);
+			if (remaining.isNegative())
+				continue;
+			if (timeout.isEmpty() || remaining.compareTo(timeout.get()) < 0)
+				timeout = Optional.of(remaining);
 		}
+		return timeout;
 	}
 	
-	private record CranePool(Semaphore semaphore) {
+	private int limit() {
+		return pressure.map(p -> Math.min(p.limit(), maxConcurrent)).orElse(maxConcurrent);
+	}
+	
+	/**
+	 * @return Number of slots of the given crane that are neither in use nor requested, slots requested by other executions are granted before ours.
+	 */
+	private int freeSlots(SalvageCrane crane) {
+		var metrics = cranes.get(crane).metrics();
+		return Math.max(0, metrics.capacity() - metrics.inUse() - metrics.outstanding());
+	}
+	
+	/**
+	 * @param attempts Number of the attempt for each volume of the batch, starting at one.
+	 */
+	private void deploy(TaskScope scope, List<SalvageVolume> batch, SalvageCrane crane, Map<SalvageVolume, Integer> attempts, BlockingQueue<Event> events) {
+		var volumeLogs = new LinkedHashMap<SalvageVolume, VolumeLog>();
+		for (var volume : batch)
+			volumeLogs.put(volume, tideLog.getVolumeLog(volume, crane));
 		
-		public static CranePool fromCrane(SalvageCrane crane) {
-			return new CranePool(new Semaphore(crane.maxConcurrent()));
+		var prepared = batch.size() == 1 ? prewarmed.remove(new Target(batch.getFirst(), crane)) : null;
+		var vessel = prepared != null ? prepared : vessel(batch, crane, volumeLogs);
+		var volumeNames = batch.stream().map(SalvageVolume::name).collect(Collectors.joining(", "));
+		log.trace("deploying crane '{}' for volume '{}'", crane.name(), volumeNames);
+		scope.fork(() -> {
+			List<Failure> failures = List.of();
+			try {
+				ThreadContext.put("volume", volumeNames);
+				log.info("starting {} for volume '{}' on crane '{}'", verify() ? "verification" : "backup", volumeNames, crane.name());
+				failures = runVessel(vessel, crane, volumeLogs, attempts);
+			} finally {
+				log.trace("returning crane '{}' to pool", crane.name());
+				cranes.get(crane).release();
+				events.add(new Event(EventType.FINISHED, crane, batch, failures));
+				ThreadContext.remove("volume");
+			}
+		});
+	}
+	
+	/**
+	 * Runs the given vessel and records the outcome of each volume. Failures that the crane's retry policy considers transient are not recorded, but returned instead.
+	 *
+	 * @return Failed volumes that may be retried.
+	 */
+	private List<Failure> runVessel(SalvageVessel vessel, SalvageCrane crane, Map<SalvageVolume, VolumeLog> volumeLogs, Map<SalvageVolume, Integer> attempts) {
+		Throwable failure = null;
+		var startedAt = Instant.now();
+		try {
+			// volume logs measure all attempts, including backoff
+			for (var entry : volumeLogs.entrySet()) {
+				if (attempts.get(entry.getKey()) == 1)
+					entry.getValue().start();
+			}
+			vessel.launch(deadline);
+		} catch (Throwable e) {
+			log.error("error while backing up volume '{}'", volumeLogs.keySet().stream().map(SalvageVolume::name).collect(Collectors.joining(", ")), e);
+			failure = e;
 		}
+		var elapsed = Duration.between(startedAt, Instant.now());
+		
+		// watchdog also kills cranes exceeding their own timeout, but those would have been killed without a deadline as well
+		var killedByDeadline = failure instanceof TimeoutException && expired();
+		if (killedByDeadline)
+			cutShort = true;
+		
+		// results reported by the crane take precedence, otherwise the outcome of the container applies to all volumes
+		var retryable = new ArrayList<Failure>();
+		for (var entry : volumeLogs.entrySet()) {
+			var volume = entry.getKey();
+			var volumeLog = entry.getValue();
+			var result = vessel.result(volume);
+			
+			String reason;
+			if (result.isPresent()) {
+				if (result.get().success()) {
+					volumeLog.success();
+					continue;
+				}
+				reason = result.get().message().isEmpty() ? "crane reported failure" : result.get().message();
+			} else if (failure == null) {
+				volumeLog.success();
+				continue;
+			} else {
+				reason = failure.getMessage();
+			}
+			
+			// cranes killed by the deadline of a yielding operation didn't get to finish, which doesn't make their volumes failed
+			if (killedByDeadline && result.isEmpty() && yieldReason.isPresent()) {
+				volumeLog.skipped(yieldReason.get());
+				continue;
+			}
+			
+			var attempt = attempts.get(volume);
+			if (!Thread.currentThread().isInterrupted() && crane.retry().shouldRetry(attempt, vessel.exitCode()))
+				retryable.add(new Failure(volume, attempt, reason, elapsed));
+			else
+				volumeLog.failure(reason);
+		}
+		return retryable;
 	}
+	
+	private enum EventType {
+		GRANTED,
+		FINISHED
+	}
+	
+	/**
+	 * @param volumes  Volumes of a finished backup, empty for granted slots.
+	 * @param failures Volumes of a finished backup that failed and may be retried.
+	 */
+	private record Event(EventType type, SalvageCrane crane, List<SalvageVolume> volumes, List<Failure> failures) {}
+	
+	/**
+	 * @param attempt Number of the failed attempt, starting at one.
+	 * @param elapsed Duration of the failed attempt.
+	 */
+	private record Failure(SalvageVolume volume, int attempt, String reason, Duration elapsed) {}
+	
+	/**
+	 * A volume backed up by a specific crane, since volumes can be backed up by multiple cranes.
+	 */
+	private record Target(SalvageVolume volume, SalvageCrane crane) {}
+	
+	/**
+	 * @param readyAt Point in time at which the volume is queued again.
+	 * @param reason  Reason of the last failure, reported if the retry never happens.
+	 */
+	private record Retry(SalvageVolume volume, SalvageCrane crane, Instant readyAt, String reason) {}
 }
@@ -0,0 +1,61 @@
+package de.chrisliebaer.salvage;
+
+import de.chrisliebaer.salvage.entity.SalvageCrane;
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Fingerprints volumes, so volumes that haven't changed since their last successful backup can be skipped without stopping any container. A helper container walks the
+ * volume and hashes path, size and modification time of every entry. File contents are never read, which keeps fingerprinting cheap, but changes that preserve both size
+ * and modification time of a file are not detected.
+ */
+@Slf4j
+public class ChangeDetector {
+	
+	/**
+	 * Output of find is sorted, since directory order is not guaranteed to be stable. Errors, such as unreadable directories, fail the whole pipeline.
+	 */
+	private static final String FINGERPRINT_SCRIPT = "set -o pipefail; cd \"$0\" && find . -exec stat -c '%n %s %Y' {} + | sort | md5sum";
+	
+	private final HelperContainer helper;
+	
+	public ChangeDetector(HelperContainer helper) {
+		this.helper = helper;
+	}
+	
+	/**
+	 * Fingerprints all given volumes. Failures are logged and the affected volume is missing from the result, so it will be backed up.
+	 *
+	 * @param routing Volumes mapped to the cranes that will back them up. Cranes are part of the fingerprint, so volumes are backed up again if their cranes change.
+	 * @return Fingerprint of each volume.
+	 */
+	public Map<SalvageVolume, String> fingerprint(Map<SalvageVolume, List<SalvageCrane>> routing) throws InterruptedException {
+		var fingerprints = new HashMap<SalvageVolume, String>();
+		for (var entry : routing.entrySet()) {
+			var volume = entry.getKey();
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			
+			try {
+				var output = helper.run(volume, "sh", "-c", FINGERPRINT_SCRIPT, HelperContainer.FILE_PATH_VOLUME).trim();
+				var hash = output.split("\\s+")[0];
+				if (hash.isEmpty())
+					throw new IllegalStateException("unexpected helper output: " + output);
+				
+				var cranes = entry.getValue().stream().map(SalvageCrane::name).collect(Collectors.joining(","));
+				fingerprints.put(volume, hash + "@" + cranes);
+				log.debug("fingerprint of volume '{}' is {}", volume.name(), hash);
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable e) {
+				log.warn("failed to fingerprint volume '{}', it will be backed up regardless", volume.name(), e);
+			}
+		}
+		return fingerprints;
+	}
+}
@@ -0,0 +1,157 @@
+package de.chrisliebaer.salvage;
+
+import de.chrisliebaer.salvage.entity.SalvageCrane;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+
+/**
+ * Limits the number of concurrent instances of a single crane. A pool is shared by all executions of the service, so the crane's limit holds even if multiple tides
+ * are running at the same time. Executions register as clients and request slots, which are handed out in round-robin order between clients, so a large tide can't
+ * starve other tides using the same crane. Instead of blocking, clients are notified once a slot has been granted to them.
+ */
+@Slf4j
+public final class CranePool {
+	
+	private final SalvageCrane crane;
+	private final int capacity;
+	
+	/**
+	 * Clients with at least one outstanding request, in the order they will be served.
+	 */
+	private final ArrayDeque<Client> waiting = new ArrayDeque<>();
+	
+	private int inUse;
+	private long grants;
+	private Duration totalWait = Duration.ZERO;
+	private Duration maxWait = Duration.ZERO;
+	
+	public CranePool(SalvageCrane crane) {
+		if (crane.maxConcurrent() < 1)
+			throw new IllegalArgumentException("tried to construct pool for crane '" + crane.name() + "', but maxConcurrent is " + crane.maxConcurrent());
+		
+		this.crane = crane;
+		this.capacity = crane.maxConcurrent();
+	}
+	
+	/**
+	 * Registers a new client with this pool. The given listener is called once for every slot granted to the client. It is called while holding the pool's lock and
+	 * must therefore not block or call back into the pool.
+	 *
+	 * @param name     Name of the client, used for logging.
+	 * @param listener Called whenever a slot has been granted.
+	 * @return The registered client.
+	 */
+	public Client register(String name, Runnable listener) {
+		return new Client(name, listener);
+	}
+	
+	/**
+	 * Returns a previously granted slot to the pool, possibly granting it to the next waiting client.
+	 */
+	public synchronized void release() {
+		if (inUse == 0)
+			throw new IllegalStateException("released slot of crane '" + crane.name() + "' without any slot in use");
+		
+		inUse--;
+		dispatch();
+	}
+	
+	public synchronized Metrics metrics() {
+		var outstanding = waiting.stream().mapToInt(c -> c.requests.size()).sum();
+		return new Metrics(capacity, inUse, outstanding, grants, totalWait, maxWait);
+	}
+	
+	private void dispatch() {
+		while (inUse < capacity && !waiting.isEmpty()) {
+			var client = waiting.removeFirst();
+			var wait = Duration.between(client.requests.removeFirst(), Instant.now());
+			
+			inUse++;
+			grants++;
+			totalWait = totalWait.plus(wait);
+			if (wait.compareTo(maxWait) > 0)
+				maxWait = wait;
+			client.grants++;
+			client.waited = client.waited.plus(wait);
+			
+			// clients with further requests have to queue up again behind all other clients
+			if (!client.requests.isEmpty())
+				waiting.addLast(client);
+			
+			log.trace("granted slot of crane '{}' to '{}' after waiting {}", crane.name(), client.name, wait);
+			client.listener.run();
+		}
+	}
+	
+	/**
+	 * An execution requesting slots from the pool. Each granted slot must be returned via {@link CranePool#release()}.
+	 */
+	public final class Client implements AutoCloseable {
+		
+		private final String name;
+		private final Runnable listener;
+		private final ArrayDeque<Instant> requests = new ArrayDeque<>();
+		
+		private long grants;
+		private Duration waited = Duration.ZERO;
+		
+		private Client(String name, Runnable listener) {
+			this.name = name;
+			this.listener = listener;
+		}
+		
+		/**
+		 * Requests a single slot. The slot might be granted immediately, in which case the listener is called before this method returns.
+		 */
+		public void request() {
+			synchronized (CranePool.this) {
+				requests.addLast(Instant.now());
+				if (!waiting.contains(this))
+					waiting.addLast(this);
+				dispatch();
+			}
+		}
+		
+		/**
+		 * Withdraws all outstanding requests. Slots that have already been granted are not affected and still need to be released.
+		 */
+		@Override
+		public void close() {
+			synchronized (CranePool.this) {
+				requests.clear();
+				waiting.remove(this);
+			}
+		}
+		
+		/**
+		 * @return Number of slots granted to this client.
+		 */
+		public long grants() {
+			synchronized (CranePool.this) {
+				return grants;
+			}
+		}
+		
+		/**
+		 * @return Time this client has spent waiting for slots, summed up over all requests.
+		 */
+		public Duration waited() {
+			synchronized (CranePool.this) {
+				return waited;
+			}
+		}
+	}
+	
+	/**
+	 * @param capacity    Maximum number of concurrent instances of the crane.
+	 * @param inUse       Number of slots currently granted.
+	 * @param outstanding Number of requests waiting for a slot.
+	 * @param grants      Number of slots granted since the pool was created.
+	 * @param totalWait   Time spent waiting for slots, summed up over all requests.
+	 * @param maxWait     Longest time a single request had to wait.
+	 */
+	public record Metrics(int capacity, int inUse, int outstanding, long grants, Duration totalWait, Duration maxWait) {}
+}
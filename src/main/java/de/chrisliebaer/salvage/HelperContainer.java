@@ -0,0 +1,106 @@
+package de.chrisliebaer.salvage;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.WaitContainerResultCallback;
+import com.github.dockerjava.api.exception.DockerClientException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.SELContext;
+import com.github.dockerjava.api.model.StreamType;
+import com.github.dockerjava.api.model.Volume;
+import de.chrisliebaer.salvage.entity.FrameCallback;
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs short-lived commands against a volume in a minimal helper container. The volume is mounted read-only, so helpers can inspect volumes while they are in use.
+ * Helpers are used for cheap measurements that would otherwise require a full crane run, as well as for copying volumes in snapshot mode.
+ */
+@Slf4j
+public class HelperContainer {
+	
+	public static final String FILE_PATH_VOLUME = "/salvage/volume";
+	
+	private final DockerClient docker;
+	private final String image;
+	
+	public HelperContainer(DockerClient docker, String image) {
+		this.docker = docker;
+		this.image = image;
+	}
+	
+	/**
+	 * Runs the given command with the volume mounted at {@link #FILE_PATH_VOLUME} and waits for it to exit.
+	 *
+	 * @param volume  Volume to mount.
+	 * @param command Command to execute.
+	 * @return Standard output of the command.
+	 * @throws IllegalStateException If the command exits with a non-zero exit code.
+	 */
+	public String run(SalvageVolume volume, String... command) throws Throwable {
+		return run("volume '" + volume.name() + "'", List.of(new Bind(volume.name(), new Volume(FILE_PATH_VOLUME), AccessMode.ro, SELContext.DEFAULT, true)), command);
+	}
+	
+	/**
+	 * Runs the given command with arbitrary binds and waits for it to exit.
+	 *
+	 * @param description Description of what the helper is working on, used for logging and errors.
+	 * @param binds       Binds of the helper container.
+	 * @param command     Command to execute.
+	 * @return Standard output of the command.
+	 * @throws IllegalStateException If the command exits with a non-zero exit code.
+	 */
+	public String run(String description, List<Bind> binds, String... command) throws Throwable {
+		var container = docker.createContainerCmd(image)
+				.withCmd(command)
+				.withLabels(Map.of(SalvageService.SALVAGE_ENTITY_LABEL, "helper"))
+				.withNetworkDisabled(true)
+				.withHostConfig(HostConfig.newHostConfig().withBinds(binds))
+				.exec();
+		log.trace("created helper container '{}' for {}: {}", container.getId(), description, String.join(" ", command));
+		
+		try {
+			docker.startContainerCmd(container.getId()).exec();
+			int statusCode;
+			try {
+				statusCode = docker.waitContainerCmd(container.getId()).exec(new WaitContainerResultCallback()).awaitStatusCode();
+			} catch (DockerClientException e) {
+				// docker-java wraps interrupts, helpers need to be cancellable like cranes, the container is killed below
+				if (e.getCause() instanceof InterruptedException)
+					throw new InterruptedException("helper for " + description + " has been cancelled");
+				throw e;
+			}
+			
+			// container is not removed automatically, so we can still fetch its output after it exited
+			var stdout = new StringBuilder();
+			var stderr = new StringBuilder();
+			docker.logContainerCmd(container.getId())
+					.withStdOut(true)
+					.withStdErr(true)
+					.exec(new FrameCallback(frame -> {
+						var payload = new String(frame.getPayload(), StandardCharsets.UTF_8);
+						if (frame.getStreamType() == StreamType.STDERR)
+							stderr.append(payload);
+						else
+							stdout.append(payload);
+					}))
+					.join();
+			
+			if (statusCode != 0)
+				throw new IllegalStateException("helper for " + description + " failed with exit code " + statusCode + ": " + stderr.toString().trim());
+			return stdout.toString();
+		} finally {
+			try {
+				docker.removeContainerCmd(container.getId()).withForce(true).exec();
+			} catch (NotFoundException ignore) {
+				// container is gone already
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package de.chrisliebaer.salvage;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.SELContext;
+import com.github.dockerjava.api.model.Volume;
+import de.chrisliebaer.salvage.entity.BackupMeta;
+import de.chrisliebaer.salvage.entity.SalvageCrane;
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Provides the metadata of all volumes of a tide on docker volumes, which are mounted read-only into cranes. Metadata is written in a single upload before any container
+ * is stopped, so launching a crane no longer requires its own upload. Each volume gets its own metadata volume, since docker can only mount whole volumes, and cranes
+ * expect to find nothing but their own metadata.
+ */
+@Slf4j
+public class MetaStore implements AutoCloseable {
+	
+	public static final String ENTITY = "meta";
+	
+	private static final String FILE_PATH_STAGING = "/salvage/meta/%d";
+	private static final String FILE_NAME_META = "meta.json";
+	
+	private final DockerClient docker;
+	
+	/**
+	 * Names of the metadata volumes, keyed by volume and crane, since metadata contains the crane.
+	 */
+	private final Map<Key, String> volumes = new HashMap<>();
+	
+	private MetaStore(DockerClient docker) {
+		this.docker = docker;
+	}
+	
+	/**
+	 * Creates metadata volumes for all given volumes and writes their metadata.
+	 *
+	 * @param helperImage Image of the container used to write the metadata, it is never started.
+	 * @param prefix      Prefix of the created volume names, needs to be unique for every execution.
+	 * @param routing     Volumes mapped to the cranes that will back them up.
+	 */
+	public static MetaStore create(DockerClient docker, String helperImage, String prefix, Map<SalvageVolume, List<SalvageCrane>> routing,
+								   BackupMeta.HostMeta hostMeta) throws Throwable {
+		var store = new MetaStore(docker);
+		try {
+			var metas = new LinkedHashMap<String, BackupMeta>();
+			var binds = new ArrayList<Bind>();
+			for (var entry : routing.entrySet()) {
+				var volume = entry.getKey();
+				for (var crane : entry.getValue()) {
+					var name = prefix + "-" + store.volumes.size();
+					docker.createVolumeCmd()
+							.withName(name)
+							.withLabels(Map.of(SalvageService.SALVAGE_ENTITY_LABEL, ENTITY))
+							.exec();
+					
+					var path = FILE_PATH_STAGING.formatted(store.volumes.size());
+					store.volumes.put(new Key(volume, crane), name);
+					binds.add(new Bind(name, new Volume(path), AccessMode.rw, SELContext.DEFAULT, true));
+					metas.put(path + "/" + FILE_NAME_META, new BackupMeta(hostMeta, volume.meta(), crane.name(), crane.image()));
+				}
+			}
+			
+			// docker mounts volumes of stopped containers for uploads, so a single upload fills all volumes without ever starting the helper
+			var container = docker.createContainerCmd(helperImage)
+					.withLabels(Map.of(SalvageService.SALVAGE_ENTITY_LABEL, "helper"))
+					.withNetworkDisabled(true)
+					.withHostConfig(HostConfig.newHostConfig().withBinds(binds))
+					.exec();
+			try {
+				docker.copyArchiveToContainerCmd(container.getId())
+						.withTarInputStream(new ByteArrayInputStream(SalvageVessel.createMetaArchive(metas)))
+						.withRemotePath("/")
+						.exec();
+			} finally {
+				docker.removeContainerCmd(container.getId()).withForce(true).exec();
+			}
+			
+			log.debug("wrote metadata of {} volumes to metadata volumes", metas.size());
+			return store;
+		} catch (Throwable e) {
+			store.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return Name of the metadata volume of the given volume, if it has been written.
+	 */
+	public Optional<String> volume(SalvageVolume volume, SalvageCrane crane) {
+		return Optional.ofNullable(volumes.get(new Key(volume, crane)));
+	}
+	
+	/**
+	 * Removes all metadata volumes. Must only be called once no crane is using them anymore.
+	 */
+	@Override
+	public void close() {
+		for (var name : List.copyOf(volumes.values())) {
+			try {
+				docker.removeVolumeCmd(name).exec();
+			} catch (NotFoundException ignore) {
+				// volume is gone already
+			} catch (Throwable e) {
+				log.warn("failed to remove metadata volume '{}', it will be removed on next start", name, e);
+			}
+		}
+		volumes.clear();
+	}
+	
+	private record Key(SalvageVolume volume, SalvageCrane crane) {}
+}
@@ -0,0 +1,122 @@
+package de.chrisliebaer.salvage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Adapts the number of concurrent backups to the load of the host, using Linux pressure stall information. The limit is adjusted with additive increase and
+ * multiplicative decrease: while pressure stays below the threshold and all slots are in use, the limit grows by one slot per interval. Once pressure exceeds the
+ * threshold, the limit is halved. Running backups are never stopped, lowering the limit only delays new backups.
+ */
+@Slf4j
+public class PressureController {
+	
+	private static final List<String> RESOURCES = List.of("io", "cpu");
+	private static final String PSI_LINE_SOME = "some";
+	private static final String PSI_FIELD_AVG10 = "avg10=";
+	
+	private final Path directory;
+	private final double threshold;
+	private final Duration interval;
+	private final int ceiling;
+	
+	private int limit;
+	private Instant lastSample = Instant.EPOCH;
+	private boolean warned;
+	
+	/**
+	 * @param directory Directory containing the pressure files of the host, usually a mount of {@code /proc/pressure}.
+	 * @param threshold Share of time in percent, in which at least one task was stalled, above which the limit is lowered.
+	 * @param interval  Minimum time between two adjustments.
+	 * @param ceiling   Upper bound of the limit.
+	 */
+	public PressureController(Path directory, double threshold, Duration interval, int ceiling) {
+		this.directory = directory;
+		this.threshold = threshold;
+		this.interval = interval;
+		this.ceiling = ceiling;
+		limit = ceiling;
+	}
+	
+	/**
+	 * @return Number of backups that may currently run at the same time.
+	 */
+	public int limit() {
+		return limit;
+	}
+	
+	public Duration interval() {
+		return interval;
+	}
+	
+	/**
+	 * Samples pressure and adjusts the limit, if the last adjustment is at least one interval ago.
+	 *
+	 * @param running Number of currently running backups.
+	 * @return {@code true} if the limit has changed.
+	 */
+	public boolean update(int running) {
+		var now = Instant.now();
+		if (Duration.between(lastSample, now).compareTo(interval) < 0)
+			return false;
+		lastSample = now;
+		
+		var pressure = sample();
+		if (pressure.isEmpty())
+			return false;
+		
+		var previous = limit;
+		if (pressure.get() > threshold) {
+			// decrease relative to what is actually running, otherwise an unused limit would take many intervals to have any effect
+			limit = Math.max(1, Math.min(limit, running) / 2);
+		} else if (running >= limit && limit < ceiling) {
+			limit++;
+		}
+		
+		if (limit != previous)
+			log.debug("host pressure at {}%, adjusted concurrent backup limit from {} to {}", pressure.get(), previous, limit);
+		return limit != previous;
+	}
+	
+	/**
+	 * @return Highest ten second average of all monitored resources, or empty if pressure information is not available.
+	 */
+	private Optional<Double> sample() {
+		var highest = 0.0;
+		for (var resource : RESOURCES) {
+			var file = directory.resolve(resource);
+			try {
+				highest = Math.max(highest, parseAvg10(Files.readAllLines(file, StandardCharsets.UTF_8)));
+			} catch (IOException | IllegalArgumentException e) {
+				if (!warned) {
+					log.warn("failed to read pressure information from '{}', concurrency will not be adjusted", file, e);
+					warned = true;
+				}
+				return Optional.empty();
+			}
+		}
+		return Optional.of(highest);
+	}
+	
+	private static double parseAvg10(List<String> lines) {
+		for (var line : lines) {
+			var fields = line.trim().split("\\s+");
+			if (fields.length < 2 || !PSI_LINE_SOME.equals(fields[0]))
+				continue;
+			
+			for (var field : fields) {
+				if (field.startsWith(PSI_FIELD_AVG10))
+					return Double.parseDouble(field.substring(PSI_FIELD_AVG10.length()));
+			}
+		}
+		throw new IllegalArgumentException("no '" + PSI_LINE_SOME + " " + PSI_FIELD_AVG10 + "' entry found");
+	}
+}
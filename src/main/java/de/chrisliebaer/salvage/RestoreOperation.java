@@ -0,0 +1,265 @@
+package de.chrisliebaer.salvage;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.SELContext;
+import com.github.dockerjava.api.model.Volume;
+import com.google.gson.Gson;
+import de.chrisliebaer.salvage.entity.BackupMeta;
+import de.chrisliebaer.salvage.entity.SalvageCrane;
+import de.chrisliebaer.salvage.entity.SalvageTide;
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import de.chrisliebaer.salvage.reporting.CaptainHook;
+import de.chrisliebaer.salvage.reporting.DowntimeBreach;
+import de.chrisliebaer.salvage.reporting.FinishState;
+import de.chrisliebaer.salvage.reporting.VolumeLog;
+import de.chrisliebaer.salvage.reporting.VolumeProgress;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.ThreadContext;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restores volumes from backups of a crane. Each volume is restored in two phases: the crane first recovers the metadata stored alongside the backup, which is used to
+ * recreate the volume with its original driver, options and labels, before the crane restores the content of the volume. Volumes are restored in parallel, limited by
+ * the pool of the crane.
+ */
+@Slf4j
+public class RestoreOperation {
+	
+	/**
+	 * Interval in which progress of running restores is logged.
+	 */
+	private static final Duration PROGRESS_LOG_INTERVAL = Duration.ofSeconds(30);
+	
+	private static final String META_VOLUME_PREFIX = "salvage-restore-";
+	private static final String META_FILE = HelperContainer.FILE_PATH_VOLUME + "/meta.json";
+	
+	private static final Gson GSON = new Gson();
+	
+	private final DockerClient docker;
+	private final HelperContainer helper;
+	private final SalvageCrane crane;
+	private final CranePool pool;
+	private final BackupMeta.HostMeta hostMeta;
+	private final Optional<Long> timestamp;
+	
+	/**
+	 * @param pool      Pool of the crane, shared with tides so crane limits are enforced.
+	 * @param timestamp Tide timestamp of the backup to restore, empty for the latest backup.
+	 */
+	public RestoreOperation(DockerClient docker, HelperContainer helper, SalvageCrane crane, CranePool pool, BackupMeta.HostMeta hostMeta, Optional<Long> timestamp) {
+		this.docker = docker;
+		this.helper = helper;
+		this.crane = crane;
+		this.pool = pool;
+		this.hostMeta = hostMeta;
+		this.timestamp = timestamp;
+	}
+	
+	/**
+	 * Restores all given volumes and waits for them to finish. Volumes that already exist are never touched.
+	 *
+	 * @param volumes Names of the volumes to restore.
+	 * @return Log of each volume.
+	 */
+	public Map<String, VolumeLog> restore(List<String> volumes) throws InterruptedException {
+		var hook = new LoggingHook();
+		var logs = new LinkedHashMap<String, VolumeLog>();
+		for (var name : volumes)
+			logs.put(name, new VolumeLog(placeholder(name), crane, hook));
+		
+		// grants are only signaled by the pool, volumes are handed out in order by this thread
+		var events = new LinkedBlockingQueue<Boolean>();
+		var pending = new ArrayDeque<>(volumes);
+		var running = 0;
+		try (var scope = new TaskScope("RestoreShip"); var client = pool.register("restore", () -> events.add(Boolean.TRUE))) {
+			for (int i = 0; i < volumes.size(); i++)
+				client.request();
+			
+			while (!pending.isEmpty() || running > 0) {
+				var event = events.poll(PROGRESS_LOG_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+				if (event == null) {
+					logProgress(logs.values());
+					continue;
+				}
+				
+				// granted slot, or finished volume, which returns its slot to the pool
+				if (event) {
+					var name = pending.removeFirst();
+					running++;
+					deploy(scope, name, logs.get(name), events);
+				} else {
+					running--;
+				}
+			}
+		} catch (InterruptedException e) {
+			// closing the scope kills running cranes and waits for them, volumes that haven't been started are not restored
+			log.info("interrupt received, cancelling running restores");
+			throw e;
+		}
+		return logs;
+	}
+	
+	private void deploy(TaskScope scope, String name, VolumeLog volumeLog, LinkedBlockingQueue<Boolean> events) {
+		scope.fork(() -> {
+			try {
+				ThreadContext.put("volume", name);
+				log.info("starting restore of volume '{}' on crane '{}'", name, crane.name());
+				volumeLog.start();
+				restore(name, volumeLog);
+				volumeLog.success();
+			} catch (Throwable e) {
+				log.error("error while restoring volume '{}'", name, e);
+				volumeLog.failure(e);
+			} finally {
+				pool.release();
+				events.add(Boolean.FALSE);
+				ThreadContext.remove("volume");
+			}
+		});
+	}
+	
+	private void restore(String name, VolumeLog volumeLog) throws Throwable {
+		
+		// restoring into existing volumes would mix old and restored data
+		try {
+			docker.inspectVolumeCmd(name).exec();
+			throw new IllegalStateException("volume '" + name + "' already exists, remove it before restoring");
+		} catch (NotFoundException ignore) {
+			// volume doesn't exist, as expected
+		}
+		
+		var metaVolume = META_VOLUME_PREFIX + hostMeta.executionStart() + "-" + name;
+		docker.createVolumeCmd()
+				.withName(metaVolume)
+				.withLabels(Map.of(SalvageService.SALVAGE_ENTITY_LABEL, "restore"))
+				.exec();
+		try {
+			new SalvageVessel(docker, placeholder(name), crane, hostMeta, volumeLog,
+					new SalvageVessel.Restore(SalvageVessel.RestorePhase.META, metaVolume, timestamp)).launch();
+			
+			var meta = readMeta(name, metaVolume);
+			var volume = new SalvageVolume(name, meta, Optional.empty(), 1, Optional.empty());
+			var create = docker.createVolumeCmd().withName(name);
+			if (meta.driver() != null)
+				create.withDriver(meta.driver());
+			if (meta.driverOptions() != null)
+				create.withDriverOpts(meta.driverOptions());
+			if (meta.labels() != null)
+				create.withLabels(meta.labels());
+			create.exec();
+			log.info("recreated volume '{}' with driver '{}'", name, meta.driver());
+			
+			try {
+				new SalvageVessel(docker, volume, crane, hostMeta, volumeLog,
+						new SalvageVessel.Restore(SalvageVessel.RestorePhase.VOLUME, metaVolume, timestamp)).launch();
+			} catch (Throwable e) {
+				
+				// partially restored volumes would block another attempt
+				try {
+					docker.removeVolumeCmd(name).exec();
+				} catch (Throwable e2) {
+					e.addSuppressed(e2);
+				}
+				throw e;
+			}
+		} finally {
+			try {
+				docker.removeVolumeCmd(metaVolume).exec();
+			} catch (NotFoundException ignore) {
+				// volume is gone already
+			} catch (Throwable e) {
+				log.warn("failed to remove metadata volume '{}', it will be removed on next start", metaVolume, e);
+			}
+		}
+	}
+	
+	private BackupMeta.VolumeMeta readMeta(String name, String metaVolume) throws Throwable {
+		var binds = List.of(new Bind(metaVolume, new Volume(HelperContainer.FILE_PATH_VOLUME), AccessMode.ro, SELContext.DEFAULT, true));
+		var json = helper.run("metadata of volume '" + name + "'", binds, "cat", META_FILE);
+		var stored = GSON.fromJson(json, StoredMeta.class);
+		if (stored == null || stored.volumeMeta == null)
+			throw new IllegalStateException("crane '" + crane.name() + "' restored no metadata for volume '" + name + "'");
+		
+		var meta = stored.volumeMeta;
+		if (meta.name != null && !meta.name.equals(name))
+			log.warn("metadata of volume '{}' was stored for volume '{}', restoring under requested name", name, meta.name);
+		return new BackupMeta.VolumeMeta(name, meta.labels, meta.driver, meta.driverOptions);
+	}
+	
+	private void logProgress(Collection<VolumeLog> logs) {
+		for (var volumeLog : logs) {
+			if (volumeLog.state() != FinishState.UNKNOWN || !volumeLog.stopWatch().isStarted())
+				continue;
+			
+			var progress = volumeLog.progress().map(VolumeProgress.Summary::toString).orElse("no progress reported");
+			log.info("restore of volume '{}' in progress: {}", volumeLog.volume().name(), progress);
+		}
+	}
+	
+	/**
+	 * Volume for which no metadata is known yet.
+	 */
+	private static SalvageVolume placeholder(String name) {
+		return new SalvageVolume(name, new BackupMeta.VolumeMeta(name, Map.of(), null, Map.of()), Optional.empty(), 1, Optional.empty());
+	}
+	
+	/**
+	 * Metadata as written by {@link SalvageVessel}. This is a mutable class rather than a record, since Gson can't deserialize records.
+	 */
+	private static final class StoredMeta {
+		
+		private StoredVolumeMeta volumeMeta;
+	}
+	
+	private static final class StoredVolumeMeta {
+		
+		private String name;
+		private Map<String, String> labels;
+		private String driver;
+		private Map<String, String> driverOptions;
+	}
+	
+	/**
+	 * Restores are not part of any tide, so results are only logged.
+	 */
+	private static final class LoggingHook implements CaptainHook {
+		
+		@Override
+		public void reportVolumeSuccess(SalvageVolume volume, SalvageCrane crane, Duration duration, Optional<VolumeProgress.Summary> progress) {
+			log.info("restored volume '{}' from crane '{}' in {}{}", volume.name(), crane.name(), SalvageMain.formatDuration(duration),
+					progress.map(p -> " (" + p + ")").orElse(""));
+		}
+		
+		@Override
+		public void reportVolumeFailure(SalvageVolume volume, SalvageCrane crane, String message, Duration duration, Optional<VolumeProgress.Summary> progress) {
+			log.error("failed to restore volume '{}' from crane '{}' after {}: {}", volume.name(), crane.name(), SalvageMain.formatDuration(duration), message);
+		}
+		
+		@Override
+		public void reportVolumeSkipped(SalvageVolume volume, SalvageCrane crane, String reason) {}
+		
+		@Override
+		public void reportTideSuccess(SalvageTide tide, Collection<SalvageVolume> volumes, Duration duration) {}
+		
+		@Override
+		public void reportTideFailure(SalvageTide tide, String message, Duration duration) {}
+		
+		@Override
+		public void reportTideFailure(SalvageTide tide, Collection<SalvageVolume> success, Collection<SalvageVolume> failure, String message, Duration duration) {}
+		
+		@Override
+		public void reportDowntimeBreach(SalvageTide tide, DowntimeBreach breach) {}
+	}
+}
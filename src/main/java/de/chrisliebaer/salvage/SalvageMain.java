@@ -7,13 +7,18 @@ import org.apache.logging.log4j.core.config.Configurator;
 
 import java.net.URISyntaxException;
 import java.time.Duration;
+import java.time.format.DateTimeParseException;
 import java.util.Locale;
+import java.util.regex.Pattern;
 
 @SuppressWarnings("CallToSystemExit")
 @Log4j2
 public enum SalvageMain {
 	;
 	
+	private static final Pattern DURATION_PATTERN = Pattern.compile("(?<amount>\\d+)(?<unit>[smhd])?");
+	private static final Pattern SIZE_PATTERN = Pattern.compile("(?<amount>\\d+)(?<unit>[bkmgt])?");
+	
 	public static void main(String[] args) throws URISyntaxException {
 		var verbose = System.getenv("VERBOSE");
 		if (verbose != null) {
@@ -72,4 +77,76 @@ public enum SalvageMain {
 				.replaceAll("\\.\\d+", "")
 				.toLowerCase();
 	}
+	
+	/**
+	 * Parses a human-readable duration as used in labels. Accepts plain seconds ({@code 90}), a single unit suffix ({@code 90s}, {@code 5m}, {@code 2h}, {@code 1d}) or
+	 * ISO-8601 durations ({@code PT5M}).
+	 *
+	 * @param value the string to parse.
+	 * @return the parsed duration.
+	 * @throws IllegalArgumentException if the value is not a valid duration.
+	 */
+	public static Duration parseDuration(String value) {
+		var str = value.strip().toLowerCase(Locale.ROOT);
+		var matcher = DURATION_PATTERN.matcher(str);
+		if (matcher.matches()) {
+			var amount = Long.parseLong(matcher.group("amount"));
+			var unit = matcher.group("unit");
+			return switch (unit == null ? "s" : unit) {
+				case "s" -> Duration.ofSeconds(amount);
+				case "m" -> Duration.ofMinutes(amount);
+				case "h" -> Duration.ofHours(amount);
+				case "d" -> Duration.ofDays(amount);
+				default -> throw new IllegalArgumentException("unknown duration unit in '" + value + "'");
+			};
+		}
+		
+		try {
+			return Duration.parse(value.strip());
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("invalid duration '" + value + "'", e);
+		}
+	}
+	
+	/**
+	 * Parses a human-readable size as used in labels. Accepts plain bytes ({@code 1048576}) or a single binary unit suffix ({@code 512k}, {@code 256m}, {@code 2g},
+	 * {@code 1t}), like the docker cli.
+	 *
+	 * @param value the string to parse.
+	 * @return the parsed size in bytes.
+	 * @throws IllegalArgumentException if the value is not a valid size.
+	 */
+	public static long parseSize(String value) {
+		var matcher = SIZE_PATTERN.matcher(value.strip().toLowerCase(Locale.ROOT));
+		if (!matcher.matches())
+			throw new IllegalArgumentException("invalid size '" + value + "'");
+		
+		var amount = Long.parseLong(matcher.group("amount"));
+		var unit = matcher.group("unit");
+		var shift = switch (unit == null ? "b" : unit) {
+			case "b" -> 0;
+			case "k" -> 10;
+			case "m" -> 20;
+			case "g" -> 30;
+			case "t" -> 40;
+			default -> throw new IllegalArgumentException("unknown size unit in '" + value + "'");
+		};
+		return amount << shift;
+	}
+	
+	/**
+	 * Formats a size in bytes using the largest binary unit that keeps the value at or above one, for example {@code 1.5 GiB}.
+	 *
+	 * @param bytes the size to format.
+	 * @return the formatted size.
+	 */
+	public static String formatSize(double bytes) {
+		var units = new String[] {"B", "KiB", "MiB", "GiB", "TiB"};
+		var unit = 0;
+		while (bytes >= 1024 && unit < units.length - 1) {
+			bytes /= 1024;
+			unit++;
+		}
+		return String.format(Locale.ROOT, unit == 0 ? "%.0f %s" : "%.1f %s", bytes, units[unit]);
+	}
 }
@@ -17,6 +17,9 @@ import de.chrisliebaer.salvage.entity.SalvageCrane;
 import de.chrisliebaer.salvage.entity.SalvageTide;
 import de.chrisliebaer.salvage.entity.SalvageVolume;
 import de.chrisliebaer.salvage.grouping.BackupGrouping;
+import de.chrisliebaer.salvage.planning.BackupJobs;
+import de.chrisliebaer.salvage.planning.TidePlanner;
+import de.chrisliebaer.salvage.planning.VolumeHistory;
 import de.chrisliebaer.salvage.reporting.CaptainHook;
 import de.chrisliebaer.salvage.reporting.FinishState;
 import de.chrisliebaer.salvage.reporting.TideLog;
@@ -32,10 +35,17 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Log4j2
@@ -57,6 +67,16 @@ public class SalvageService extends AbstractService {
 	private final Thread serviceThread = new Thread(this::serviceThreadEntry, "SalvageService");
 	private String ownContainerId;
 	
+	/**
+	 * Observed backup durations, used to predict durations when grouping volumes.
+	 */
+	private VolumeHistory volumeHistory;
+	
+	/**
+	 * Pools of all cranes, shared by all executions so crane limits hold even if executions overlap.
+	 */
+	private final Map<SalvageCrane, CranePool> cranePools = new IdentityHashMap<>();
+	
 	private final HttpClient httpClient = HttpClient.newBuilder()
 			.version(HttpClient.Version.HTTP_1_1)
 			.connectTimeout(Duration.ofSeconds(10))
@@ -89,6 +109,20 @@ public class SalvageService extends AbstractService {
 			}
 			
 			configuration = SalvageConfiguration.fromContainerInspect(ownContainer);
+			volumeHistory = configuration.historyFile()
+					.map(file -> VolumeHistory.load(file, configuration.assumedDuration()))
+					.orElseGet(() -> new VolumeHistory(Optional.empty(), configuration.assumedDuration()));
+			for (var crane : configuration.cranes().values())
+				cranePools.put(crane, new CranePool(crane));
+			
+			// dry run must not touch anything, including crane images
+			if (configuration.dryRun()) {
+				log.info("dry run requested, planning all tides without touching any container");
+				notifyStarted();
+				dryRun();
+				notifyStopped();
+				return;
+			}
 			
 			// ensure we have all images specified by cranes
 			for (var crane : configuration.cranes().values()) {
@@ -101,6 +135,24 @@ public class SalvageService extends AbstractService {
 						log.warn("failed to pull for crane '{}' image '{}', no existing image present, good luck", crane.name(), crane.image(), e);
 				}
 			}
+			
+			// helper is only used for measurements, so missing it is not fatal
+			try {
+				verifyImage(docker, configuration.helperImage(), false);
+			} catch (ImagePullFailedException e) {
+				log.warn("failed to pull helper image '{}', volume sizes can't be measured until it is available", configuration.helperImage(), e);
+			}
+			
+			// restores replace tide execution entirely, salvage exits once all volumes have been restored
+			if (configuration.restore().isPresent()) {
+				notifyStarted();
+				var failed = restore(docker, configuration.restore().get());
+				if (failed.isEmpty())
+					notifyStopped();
+				else
+					notifyFailed(new IllegalStateException("failed to restore volumes: " + String.join(", ", failed)));
+				return;
+			}
 		} catch (Throwable e) {
 			notifyFailed(e);
 			return;
@@ -111,21 +163,26 @@ public class SalvageService extends AbstractService {
 	}
 	
 	private void verifyCraneImage(DockerClient docker, SalvageCrane crane) throws InterruptedException, ImagePullFailedException {
+		log.trace("verifying image '{}' of crane '{}'", crane.image(), crane.name());
+		verifyImage(docker, crane.image(), crane.pullOnRun());
+	}
+	
+	private void verifyImage(DockerClient docker, String image, boolean pullOnRun) throws InterruptedException, ImagePullFailedException {
 		
 		// check if image is already present
 		boolean isPresent;
 		try {
-			var image = docker.inspectImageCmd(crane.image()).exec();
+			docker.inspectImageCmd(image).exec();
 			isPresent = true;
 		} catch (NotFoundException ignore) {
 			isPresent = false;
 		}
 		
-		if (!isPresent || crane.pullOnRun()) {
+		if (!isPresent || pullOnRun) {
 			
-			log.info("fetching : '{}' for crane '{}' (isPresent: {}, pullOnRun: {})", crane.image(), crane.name(), isPresent, crane.pullOnRun());
+			log.info("fetching image '{}' (isPresent: {}, pullOnRun: {})", image, isPresent, pullOnRun);
 			try {
-				var callback = docker.pullImageCmd(crane.image()).exec(new PullImageResultCallback());
+				var callback = docker.pullImageCmd(image).exec(new PullImageResultCallback());
 				callback.awaitCompletion();
 			} catch (InterruptedException e) {
 				throw e;
@@ -205,57 +262,118 @@ public class SalvageService extends AbstractService {
 			tideLog.failure("fatal error, check logs and report issue");
 		}
 		
+		// remember how long each volume took, so future groupings can make better predictions, volumes with multiple cranes are as slow as their slowest crane
+		// verification takes a different amount of time than a backup, so it must not affect predictions
+		var durations = new HashMap<SalvageVolume, Duration>();
+		for (var volumeLog : tideLog.volumeLogs()) {
+			if (volumeLog.state() == FinishState.SUCCESS && tide.type() == SalvageTide.TideType.BACKUP)
+				durations.merge(volumeLog.volume(), volumeLog.stopWatch().duration(), (a, b) -> a.compareTo(b) >= 0 ? a : b);
+		}
+		durations.forEach(volumeHistory::record);
+		volumeHistory.save();
+		
+		if (log.isDebugEnabled()) {
+			for (var entry : cranePools.entrySet()) {
+				var metrics = entry.getValue().metrics();
+				if (metrics.grants() == 0)
+					continue;
+				
+				var averageWait = metrics.totalWait().dividedBy(metrics.grants());
+				log.debug("crane '{}' granted {} slots so far, average wait {}, longest wait {}, {} of {} slots in use, {} requests waiting",
+						entry.getKey().name(), metrics.grants(), averageWait, metrics.maxWait(), metrics.inUse(), metrics.capacity(), metrics.outstanding());
+			}
+		}
+		
 		doTideReporting(tideLog, hook);
 	}
 	
 	private void executeTide(SalvageTide tide, Instant executionStart, TideLog tideLog) throws IOException, InterruptedException {
 		log.info("executing tide '{}'", tide.name());
 		tideLog.start();
+		var deadline = tide.timeout().map(Instant.now()::plus);
 		
 		try (var docker = createDefaultClient()) {
 			docker.pingCmd().exec();
 			
+			var discovery = discover(docker, tide);
+			var volumes = new HashMap<>(discovery.volumes());
+			var containers = new ArrayList<>(discovery.containers());
+			
+			// volumes may request a different crane than the tide's default crane
+			Map<SalvageVolume, List<SalvageCrane>> routing;
 			try {
-				// crane might have new image or user purged existing image, so we check again
-				verifyCraneImage(docker, tide.crane());
-			} catch (ImagePullFailedException e) {
-				if (e.isPresent()) {
-					tideLog.failure("failed to pull crane '%s' image '%s' but local image is still present".formatted(tide.crane().name(), tide.crane().image()));
-				} else {
-					tideLog.failure("failed to pull crane '%s' image '%s' no local image available".formatted(tide.crane().name(), tide.crane().image()));
-					return;
-				}
+				routing = routeVolumes(tide, volumes.values());
+			} catch (IllegalArgumentException e) {
+				tideLog.failure(e.getMessage());
+				return;
 			}
 			
-			// identifying volumes of tide is rather complicated and involes different logic, depending on wether the volume is part of a project or not
-			var volumes = getVolumeNamesForTide(docker, tide);
-			
-			log.info("found {} volumes belonging to tide '{}'", volumes.size(), tide.name());
-			if (log.isDebugEnabled()) {
-				for (var volume : volumes.values()) {
-					log.debug("\t- found volume {}", volume.name());
+			// crane might have new image or user purged existing image, so we check again for every crane used by this tide
+			var usedCranes = new LinkedHashSet<SalvageCrane>();
+			routing.values().forEach(usedCranes::addAll);
+			for (var crane : usedCranes) {
+				try {
+					verifyCraneImage(docker, crane);
+				} catch (ImagePullFailedException e) {
+					if (e.isPresent()) {
+						tideLog.failure("failed to pull crane '%s' image '%s' but local image is still present".formatted(crane.name(), crane.image()));
+					} else {
+						tideLog.failure("failed to pull crane '%s' image '%s' no local image available".formatted(crane.name(), crane.image()));
+						return;
+					}
 				}
 			}
 			
-			// identify container depending on these volumes
-			var containers = docker.listContainersCmd()
-					.withFilter("volume", volumes.keySet()).exec().stream()
-					.map(c -> docker.inspectContainerCmd(c.getId()).exec())
-					.map(c -> SalvageContainer.fromContainer(c, volumes))
-					.collect(Collectors.toList());
+			// verification only reads backups, so none of the container and volume handling below applies
+			if (tide.type() == SalvageTide.TideType.VERIFY) {
+				verifyTide(docker, tide, executionStart, tideLog, routing, deadline);
+				if (tideLog.tideResult().state() != FinishState.FAILURE)
+					tideLog.success();
+				return;
+			}
 			
-			// remove ourselves, since we never want to touch our own container
-			containers.removeIf(c -> c.id().equals(ownContainerId));
+			// sizes of new or changed volumes improve predictions, helper is allowed to fail since predictions have other fallbacks
+			var helperAvailable = false;
+			try {
+				verifyImage(docker, configuration.helperImage(), false);
+				helperAvailable = true;
+				new VolumeProbe(new HelperContainer(docker, configuration.helperImage()), volumeHistory, configuration.sizeCacheTtl()).measure(volumes.values());
+			} catch (ImagePullFailedException e) {
+				log.warn("failed to pull helper image '{}', skipping volume size measurement", configuration.helperImage(), e);
+			}
 			
-			log.info("found {} containers depending on tide '{}'", containers.size(), tide.name());
-			if (log.isDebugEnabled()) {
-				for (var container : containers) {
-					log.debug("\t- found container {}", container.name());
+			// unchanged volumes are removed before grouping, so containers are only stopped for volumes that actually need a backup
+			Map<SalvageVolume, String> fingerprints = Map.of();
+			if (tide.skipUnchanged()) {
+				if (helperAvailable) {
+					fingerprints = new ChangeDetector(new HelperContainer(docker, configuration.helperImage())).fingerprint(routing);
+					skipUnchanged(tide, tideLog, fingerprints, volumes, containers, routing);
+				} else {
+					log.warn("change detection requires helper image '{}', backing up all volumes", configuration.helperImage());
 				}
 			}
 			
+			// shards are planned with the helper as well, volumes are backed up as a whole without it
+			Map<SalvageVolume, List<SalvageVolume>> shards = Map.of();
+			if (helperAvailable)
+				shards = new ShardPlanner(new HelperContainer(docker, configuration.helperImage())).plan(volumes.values());
+			else if (volumes.values().stream().anyMatch(volume -> volume.shards() > 1))
+				log.warn("sharding requires helper image '{}', backing up sharded volumes as a whole", configuration.helperImage());
+			
+			// volumes on the same device are limited separately, volumes that have never been measured are not limited
+			var devices = new HashMap<SalvageVolume, String>();
+			for (var volume : volumes.values()) {
+				var device = volumeHistory.device(volume);
+				if (device.isEmpty())
+					continue;
+				devices.put(volume, device.get());
+				shards.getOrDefault(volume, List.of()).forEach(shard -> devices.put(shard, device.get()));
+			}
+			
 			// group tide into waves to minimize downtime
-			var groups = BackupGrouping.groups(containers, volumes, tide.groupingMode());
+			var slots = tide.slots();
+			var jobs = new BackupJobs(tide.craneMode(), routing, shards, volumeHistory);
+			var groups = BackupGrouping.groups(containers, volumes, tide.groupingMode(), tide.groupingBounds(), slots, jobs);
 			log.debug("grouping tide into {} waves", groups.size());
 			if (log.isDebugEnabled()) {
 				for (int i = 0; i < groups.size(); i++) {
@@ -268,24 +386,85 @@ public class SalvageService extends AbstractService {
 				}
 			}
 			
+			// containers in multiple groups will be stopped and started multiple times, which users might want to know about when tuning grouping
+			var cycledContainers = BackupGrouping.cycledContainers(groups);
+			for (var entry : cycledContainers.entrySet())
+				log.info("container {} is part of {} groups and will be cycled {} times", entry.getKey().name(), entry.getValue(), entry.getValue());
+			
 			var hostMeta = new BackupMeta.HostMeta(System.currentTimeMillis(), executionStart.toEpochMilli(), configuration.hostname());
 			
+			// adapt concurrency to host load, controller is kept for the whole tide so it remembers the limit between groups
+			var pressure = configuration.pressurePath()
+					.map(path -> new PressureController(path, configuration.pressureThreshold(), configuration.pressureInterval(), tide.maxConcurrent()));
+			
+			// write metadata of all volumes once, so cranes only need to mount it, uploading it into each crane still works as a fallback
+			Optional<MetaStore> metaStore = Optional.empty();
+			if (helperAvailable) {
+				try {
+					var prefix = "salvage-meta-" + tide.name() + "-" + executionStart.getEpochSecond();
+					metaStore = Optional.of(MetaStore.create(docker, configuration.helperImage(), prefix, routing, hostMeta));
+				} catch (Throwable e) {
+					log.warn("failed to write metadata ahead of time, uploading it into each crane instead", e);
+				}
+			}
+			
+			// staging volumes are created upfront, so cranes can be prepared for them before containers are stopped
+			Optional<SnapshotStore> snapshots = Optional.empty();
+			if (tide.snapshot()) {
+				if (helperAvailable) {
+					try {
+						var prefix = "salvage-snapshot-" + tide.name() + "-" + executionStart.getEpochSecond();
+						snapshots = Optional.of(SnapshotStore.create(docker, new HelperContainer(docker, configuration.helperImage()), prefix, volumes.values()));
+					} catch (Throwable e) {
+						log.warn("failed to create staging volumes, backing up volumes while containers are down instead", e);
+					}
+				} else {
+					log.warn("snapshot mode requires helper image '{}', backing up volumes while containers are down instead", configuration.helperImage());
+				}
+			}
+			
 			// instance worker pool for backup, which can be reused for all groups
-			try (var operation = new BackupOperation(docker, tide.maxConcurrent(), configuration.cranes().values(), hostMeta, tideLog)) {
+			try (var operation = new BackupOperation(docker, tide.maxConcurrent(), configuration.maxConcurrentPerDevice(), pressure, deadline, metaStore, snapshots,
+					cranePools, hostMeta, tideLog)) {
 				// backup each group individually but in series
 				for (int i = 0; i < groups.size(); i++) {
 					BackupGrouping.Group group = groups.get(i);
+					
+					// no point in stopping containers if we are not allowed to back up their volumes anymore
+					if (operation.expired()) {
+						log.warn("tide '{}' exceeded its timeout, skipping group no. {} with {} volumes", tide.name(), i, group.volumes().size());
+						var skipped = new LinkedHashMap<SalvageVolume, List<SalvageCrane>>();
+						group.volumes().forEach(volume -> skipped.put(volume, routing.get(volume)));
+						operation.skipVolumes(skipped, BackupOperation.TIMEOUT_REASON);
+						continue;
+					}
+					
 					log.debug("starting backup of group no. {} with {} containers and {} volumes", i, group.containers().size(), group.volumes().size());
 					
 					// prepare containers for backup using transaction tracking to provide the best effort in restoring container state in all circumstances
-					try (var transaction = new StateTransaction(docker)) {
-						backupGroup(tide, operation, group, transaction);
-						
-						// TODO if interrupted abort tide, probably should cancel vessel as well
+					try (var transaction = new StateTransaction(docker, tideLog)) {
+						backupGroup(tide, operation, group, routing, shards, devices, transaction, volumeHistory, snapshots);
 					}
 					
+					// cranes of an interrupted group have been cancelled and its containers restored, remaining groups are not started
+					if (Thread.interrupted())
+						throw new InterruptedException("interrupted during backup of tide '" + tide.name() + "'");
+					
 					log.debug("finish backup of group no. {} with {} containers and {} volumes", i, group.containers().size(), group.volumes().size());
 				}
+				
+				// volumes only remember their fingerprint if all of their cranes succeeded, otherwise they are backed up again next time
+				for (var entry : fingerprints.entrySet()) {
+					if (tideLog.isBackedUp(entry.getKey()))
+						volumeHistory.recordFingerprint(entry.getKey(), entry.getValue(), executionStart);
+				}
+				
+				// deadline passing after the last volume is harmless, only work that has been cut short fails the tide
+				if (operation.cutShort())
+					tideLog.failure("tide exceeded its timeout of " + tide.timeout().orElseThrow());
+			} finally {
+				metaStore.ifPresent(MetaStore::close);
+				snapshots.ifPresent(SnapshotStore::close);
 			}
 		}
 		
@@ -294,27 +473,251 @@ public class SalvageService extends AbstractService {
 			tideLog.success();
 	}
 	
+	/**
+	 * Runs the verification of each crane against the latest backup of each volume. Verification yields to backups: it stops once the next backup tide is due, killing
+	 * running cranes and reporting remaining volumes as not verified.
+	 */
+	private void verifyTide(DockerClient docker, SalvageTide tide, Instant executionStart, TideLog tideLog, Map<SalvageVolume, List<SalvageCrane>> routing,
+			Optional<Instant> deadline) {
+		var now = ZonedDateTime.now();
+		var nextBackup = configuration.tides().stream()
+				.filter(t -> t.type() == SalvageTide.TideType.BACKUP)
+				.min(Comparator.comparing(t -> t.nextExecution(now)));
+		var backupDue = nextBackup.map(t -> t.nextExecution(now).toInstant());
+		nextBackup.ifPresent(t -> log.debug("verification of tide '{}' will stop once backup tide '{}' is due at {}", tide.name(), t.name(), backupDue.get()));
+		
+		var stopAt = deadline;
+		if (backupDue.isPresent() && (stopAt.isEmpty() || backupDue.get().isBefore(stopAt.get())))
+			stopAt = backupDue;
+		
+		var hostMeta = new BackupMeta.HostMeta(System.currentTimeMillis(), executionStart.toEpochMilli(), configuration.hostname());
+		var pressure = configuration.pressurePath()
+				.map(path -> new PressureController(path, configuration.pressureThreshold(), configuration.pressureInterval(), tide.maxConcurrent()));
+		
+		// devices are not limited, since cranes only read from their backup location
+		try (var operation = new BackupOperation(docker, tide.maxConcurrent(), Integer.MAX_VALUE, pressure, stopAt, Optional.empty(), Optional.empty(), cranePools,
+				hostMeta, tideLog)) {
+			
+			// yielding to a backup is expected, volumes that weren't verified in time are only skipped and will be verified next time
+			var yielding = backupDue.isPresent() && stopAt.equals(backupDue);
+			if (yielding)
+				operation.yieldOnExpiry("not verified, backup tide '" + nextBackup.orElseThrow().name() + "' is due");
+			
+			operation.backupVolumes(routing, Map.of(), Optional.empty());
+			
+			if (operation.cutShort()) {
+				if (yielding)
+					log.info("verification of tide '{}' stopped, since backup tide '{}' is due", tide.name(), nextBackup.orElseThrow().name());
+				else
+					tideLog.failure("tide exceeded its timeout of " + tide.timeout().orElseThrow());
+			}
+		}
+	}
+	
+	/**
+	 * Removes volumes that haven't changed since their last successful backup from the tide and reports them as skipped. Volumes used by containers with pre-commands are
+	 * never skipped, since these commands usually write the data that is backed up. Containers without any remaining volume are removed as well, so they are not touched.
+	 */
+	private void skipUnchanged(SalvageTide tide, TideLog tideLog, Map<SalvageVolume, String> fingerprints, Map<String, SalvageVolume> volumes,
+			List<SalvageContainer> containers, Map<SalvageVolume, List<SalvageCrane>> routing) {
+		var now = Instant.now();
+		var unchanged = new HashSet<SalvageVolume>();
+		for (var entry : fingerprints.entrySet()) {
+			var volume = entry.getKey();
+			if (!volumeHistory.isUnchanged(volume, entry.getValue(), tide.unchangedMaxAge(), now))
+				continue;
+			
+			if (containers.stream().anyMatch(container -> container.commandPre().isPresent() && container.volumes().contains(volume))) {
+				log.debug("volume '{}' has not changed, but is used by a container with pre-command, backing it up anyway", volume.name());
+				continue;
+			}
+			unchanged.add(volume);
+		}
+		if (unchanged.isEmpty())
+			return;
+		
+		log.info("skipping {} volumes of tide '{}' that haven't changed since their last backup", unchanged.size(), tide.name());
+		for (var volume : unchanged) {
+			log.debug("\t- skipping unchanged volume {}", volume.name());
+			for (var crane : routing.remove(volume))
+				tideLog.getVolumeLog(volume, crane).skipped("volume has not changed since its last successful backup");
+			volumes.remove(volume.name());
+		}
+		containers.replaceAll(container -> container.withVolumes(container.volumes().stream().filter(volume -> !unchanged.contains(volume)).toList()));
+		containers.removeIf(container -> container.volumes().isEmpty());
+	}
+	
+	/**
+	 * Finds all volumes of the given tide and the containers depending on them. This is a read only operation and will not alter any container state.
+	 *
+	 * @param docker docker client to use.
+	 * @param tide   tide to discover.
+	 * @return volumes and containers of the tide.
+	 */
+	private TideDiscovery discover(DockerClient docker, SalvageTide tide) {
+		// identifying volumes of tide is rather complicated and involes different logic, depending on wether the volume is part of a project or not
+		var volumes = getVolumeNamesForTide(docker, tide);
+		
+		log.info("found {} volumes belonging to tide '{}'", volumes.size(), tide.name());
+		if (log.isDebugEnabled()) {
+			for (var volume : volumes.values()) {
+				log.debug("\t- found volume {}", volume.name());
+			}
+		}
+		
+		// identify container depending on these volumes
+		var containers = docker.listContainersCmd()
+				.withFilter("volume", volumes.keySet()).exec().stream()
+				.map(c -> docker.inspectContainerCmd(c.getId()).exec())
+				.map(c -> SalvageContainer.fromContainer(c, volumes))
+				.collect(Collectors.toList());
+		
+		// remove ourselves, since we never want to touch our own container
+		containers.removeIf(c -> c.id().equals(ownContainerId));
+		
+		log.info("found {} containers depending on tide '{}'", containers.size(), tide.name());
+		if (log.isDebugEnabled()) {
+			for (var container : containers) {
+				log.debug("\t- found container {}", container.name());
+			}
+		}
+		
+		return new TideDiscovery(volumes, containers);
+	}
+	
+	/**
+	 * Assigns each volume to the cranes that should back it up. Volumes use the tide's cranes, unless they request different cranes via label.
+	 *
+	 * @param tide    tide the volumes belong to.
+	 * @param volumes volumes of the tide.
+	 * @return cranes for each volume, in the order they should run.
+	 * @throws IllegalArgumentException if a volume requests a crane that does not exist.
+	 */
+	private Map<SalvageVolume, List<SalvageCrane>> routeVolumes(SalvageTide tide, Collection<SalvageVolume> volumes) {
+		var routing = new HashMap<SalvageVolume, List<SalvageCrane>>();
+		for (var volume : volumes) {
+			var volumeCranes = tide.cranes();
+			if (volume.crane().isPresent()) {
+				try {
+					volumeCranes = SalvageTide.resolveCranes(volume.crane().get(), configuration.cranes());
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("volume '%s' requested unknown crane: %s".formatted(volume.name(), e.getMessage()), e);
+				}
+				if (volumeCranes.isEmpty())
+					throw new IllegalArgumentException("volume '%s' requested no crane".formatted(volume.name()));
+				log.debug("volume '{}' will be backed up by cranes {} instead of tide default", volume.name(), volumeCranes.stream().map(SalvageCrane::name).toList());
+			}
+			routing.put(volume, volumeCranes);
+		}
+		return routing;
+	}
+	
+	/**
+	 * Creates execution plans for all tides without touching any container. Used when salvage is started in dry run mode.
+	 */
+	private void dryRun() {
+		var planner = new TidePlanner(volumeHistory);
+		try (var docker = createDefaultClient()) {
+			docker.pingCmd().exec();
+			
+			for (var tide : configuration.tides()) {
+				ThreadContext.put("tide", tide.name());
+				try {
+					if (tide.type() == SalvageTide.TideType.VERIFY) {
+						log.info("tide '{}' only verifies backups and doesn't touch any container", tide.name());
+						continue;
+					}
+					
+					var discovery = discover(docker, tide);
+					var routing = routeVolumes(tide, discovery.volumes().values());
+					planner.plan(tide, discovery.containers(), discovery.volumes(), routing);
+				} catch (Throwable e) {
+					log.error("failed to plan tide '{}'", tide.name(), e);
+				} finally {
+					ThreadContext.remove("tide");
+				}
+			}
+		} catch (IOException e) {
+			log.error("failed to close docker client after dry run", e);
+		}
+	}
+	
+	/**
+	 * Restores the requested volumes from their backups.
+	 *
+	 * @return Names of all volumes that could not be restored.
+	 */
+	private List<String> restore(DockerClient docker, SalvageConfiguration.RestoreRequest request) throws InterruptedException {
+		var crane = request.crane();
+		log.info("restoring volumes {} from crane '{}' ({})", request.volumes(), crane.name(),
+				request.timestamp().map(t -> "backup of " + Instant.ofEpochSecond(t)).orElse("latest backup"));
+		
+		var now = Instant.now();
+		var hostMeta = new BackupMeta.HostMeta(now.toEpochMilli(), now.toEpochMilli(), configuration.hostname());
+		var helper = new HelperContainer(docker, configuration.helperImage());
+		var operation = new RestoreOperation(docker, helper, crane, cranePools.get(crane), hostMeta, request.timestamp());
+		var logs = operation.restore(request.volumes());
+		var failed = logs.entrySet().stream().filter(e -> e.getValue().state() != FinishState.SUCCESS).map(Map.Entry::getKey).toList();
+		if (failed.isEmpty())
+			log.info("successfully restored volumes: {}", String.join(", ", logs.keySet()));
+		return failed;
+	}
+	
 	private static void doTideReporting(TideLog tideLog, CaptainHook hook) {
 		var tideResult = tideLog.tideResult();
 		
+		// breaches have been reported as they happened, summary allows tuning budgets from the log alone
+		var breaches = tideLog.downtimeBreaches();
+		if (!breaches.isEmpty()) {
+			var breachesStr = breaches.stream()
+					.map(b -> "%s (%s, %s of %s)".formatted(b.container().name(), b.outcome().name().toLowerCase(Locale.ROOT), SalvageMain.formatDuration(b.downtime()),
+							SalvageMain.formatDuration(b.budget())))
+					.collect(Collectors.joining(", "));
+			log.warn("tide '{}' had {} downtime budget conflicts: {}", tideLog.tide().name(), breaches.size(), breachesStr);
+		}
+		
+		// auto actions are judged by actual downtime, a decision that ended up on the other side of the threshold suggests tuning the pause threshold
+		for (var decision : tideLog.actionDecisions()) {
+			var paused = decision.action() == SalvageContainer.ContainerAction.PAUSE;
+			var fitting = paused == decision.downtime().compareTo(decision.threshold()) < 0;
+			if (fitting) {
+				log.info("tide '{}' picked {} for container {}, which was down for {} (predicted: {}, pause threshold: {})", tideLog.tide().name(), decision.action(),
+						decision.container().name(), SalvageMain.formatDuration(decision.downtime()), SalvageMain.formatDuration(decision.predicted()),
+						SalvageMain.formatDuration(decision.threshold()));
+			} else {
+				log.warn("tide '{}' picked {} for container {}, but it was down for {} (predicted: {}, pause threshold: {}), consider tuning its pause threshold",
+						tideLog.tide().name(), decision.action(), decision.container().name(), SalvageMain.formatDuration(decision.downtime()),
+						SalvageMain.formatDuration(decision.predicted()), SalvageMain.formatDuration(decision.threshold()));
+			}
+		}
+		
 		// volume list will not always be present, depending on the reason the tide failed, logging needs to be aware of that
-		var volumes = tideLog.volumeLogs().stream().map(VolumeLog::volume).toList();
+		var skippedVolumes = tideLog.volumeLogs().stream().filter(v -> v.state() == FinishState.SKIPPED).map(VolumeLog::volume).distinct().toList();
+		var volumes = tideLog.volumeLogs().stream().map(VolumeLog::volume).distinct().filter(v -> !skippedVolumes.contains(v)).toList();
 		
 		if (tideResult.state() == FinishState.SUCCESS) {
-			if (volumes.isEmpty()) {
+			if (volumes.isEmpty() && skippedVolumes.isEmpty()) {
 				log.info("tide '{}' successfully finished, but no volumes are assigned to tide", tideLog.tide().name());
 			} else {
 				var volumesStr = volumes.stream().map(SalvageVolume::name).collect(Collectors.joining(", "));
 				log.info("tide '{}' successfully finished back up volumes: {}", tideLog.tide().name(), volumesStr);
 			}
+			if (!skippedVolumes.isEmpty())
+				log.info("tide '{}' skipped volumes: {}", tideLog.tide().name(), skippedVolumes.stream().map(SalvageVolume::name).collect(Collectors.joining(", ")));
 			
 			hook.reportTideSuccess(tideLog.tide(), volumes, tideLog.stopWatch().duration());
 			return;
 		}
 		
 		// tide encountered issues, check how many volumes were successfully backed up
-		var successfulVolumes = tideLog.volumeLogs().stream().filter(v -> v.state() == FinishState.SUCCESS).map(VolumeLog::volume).toList();
-		var failedVolumes = tideLog.volumeLogs().stream().filter(v -> v.state() == FinishState.FAILURE).map(VolumeLog::volume).toList();
+		// volumes with multiple cranes only count as successful if all of their cranes succeeded
+		var failedVolumes = tideLog.volumeLogs().stream().filter(v -> v.state() == FinishState.FAILURE).map(VolumeLog::volume).distinct().toList();
+		var successfulVolumes = tideLog.volumeLogs().stream()
+				.filter(v -> v.state() == FinishState.SUCCESS)
+				.map(VolumeLog::volume)
+				.filter(v -> !failedVolumes.contains(v))
+				.distinct()
+				.toList();
 		
 		if (!failedVolumes.isEmpty() || !successfulVolumes.isEmpty()) {
 			// due to how tide volumes are requested, if there is at least one volume, we can assume that all volumes are present
@@ -336,46 +739,72 @@ public class SalvageService extends AbstractService {
 		// report for individual volumes is done in the volume log itself in order to have them closer to the actual time the volume was backed up
 	}
 	
-	private static void backupGroup(SalvageTide tide, BackupOperation operation, BackupGrouping.Group group, StateTransaction transaction) {
+	private static void backupGroup(SalvageTide tide, BackupOperation operation, BackupGrouping.Group group, Map<SalvageVolume, List<SalvageCrane>> routing,
+			Map<SalvageVolume, List<SalvageVolume>> shards, Map<SalvageVolume, String> devices, StateTransaction transaction, VolumeHistory history,
+			Optional<SnapshotStore> snapshots) throws InterruptedException {
 		
 		var containers = group.containers();
 		
-		// if an error occurs during preparation, we can simply abort the whole backup
+		// containers will be down until all volumes of the group have been backed up, or copied in snapshot mode
+		var slots = tide.slots();
+		var predictedDowntime = snapshots.isPresent()
+				? snapshots.get().estimate(group.volumes(), history::size, history)
+				: new BackupJobs(tide.craneMode(), routing, shards, history).makespan(group.volumes(), slots);
+		predictedDowntime = predictedDowntime.plus(tide.groupingBounds().restartCost());
+		
+		// start longest volumes first, so short volumes can fill up slots towards the end of the group, shards are backed up like separate volumes
+		var volumes = new LinkedHashMap<SalvageVolume, List<SalvageCrane>>();
+		group.volumes().stream()
+				.sorted(Comparator.comparing(history::estimate, Comparator.reverseOrder()))
+				.forEach(volume -> shards.getOrDefault(volume, List.of(volume)).forEach(part -> volumes.put(part, routing.get(volume))));
+		
+		// creating crane containers takes a while on slow daemons, so we do it while containers are still running
+		operation.prewarm(volumes, devices);
+		
+		// if an error occurs during preparation, we can simply abort the whole backup, prepared cranes would otherwise linger until the tide ends
 		try {
-			for (var container : containers) {
-				ThreadContext.put("container", container.name());
-				log.debug("preparing container {} for backup", container.name());
-				transaction.prepare(container);
-			}
+			transaction.prepareAll(containers, predictedDowntime);
 		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			throw new IllegalStateException("failed to establish pre backup state for tide '" + tide.name() + "'", e);
+			// containers that have been prepared already are rolled back by the transaction
+			operation.discardPrewarmed();
+			throw e;
 		} catch (Throwable e) {
+			operation.discardPrewarmed();
 			throw new IllegalStateException("failed to establish pre backup state for tide '" + tide.name() + "'", e);
-		} finally {
-			ThreadContext.remove("container");
+		}
+		
+		// in snapshot mode, containers only need to stay down until their volumes have been copied
+		if (snapshots.isPresent()) {
+			try {
+				snapshots.get().copy(group.volumes());
+			} catch (Throwable e) {
+				transaction.restoreAll(containers);
+				log.error("failed to snapshot volumes of tide '{}'", tide.name(), e);
+				operation.skipVolumes(volumes, "failed to snapshot volume: " + e.getMessage());
+				snapshots.get().release(group.volumes());
+				if (e instanceof InterruptedException ie)
+					throw ie;
+				return;
+			}
+			transaction.restoreAll(containers);
 		}
 		
 		// errors during backup operation can not be recovered, we will continue with the backup and hope for the best
 		try {
-			operation.backupVolumes(tide.crane(), group.volumes());
+			operation.backupVolumes(volumes, devices, transaction.downtimeLimit(containers));
 		} catch (Throwable e) {
+			// volumes without a result fail the tide, containers still need to be restored
 			log.error("encountered error during backup of tide '{}'", tide.name(), e);
-			Thread.currentThread().interrupt();
 		}
 		
-		// error during finish state on containers need to be ignored, since we might be able to recover some containers
-		for (var container : containers) {
-			try {
-				ThreadContext.put("container", container.name());
-				log.debug("restoring container {} to previous state", container.name());
-				transaction.restore(container);
-			} catch (Throwable e) {
-				log.warn("failed to restore post backup state for tide '{}' and container '{}'", tide.name(), container.name(), e);
-			} finally {
-				ThreadContext.remove("container");
-			}
+		// containers of snapshot tides have been restored already, only the staging copies are left
+		if (snapshots.isPresent()) {
+			snapshots.get().release(group.volumes());
+			return;
 		}
+		
+		// error during finish state on containers need to be ignored, since we might be able to recover some containers
+		transaction.restoreAll(containers);
 	}
 	
 	private static DockerClient createDefaultClient() {
@@ -401,6 +830,25 @@ public class SalvageService extends AbstractService {
 						.exec();
 			}
 		}
+		
+		// volumes can only be removed once no container is using them anymore, this includes both metadata and staging volumes
+		var volumes = docker.listVolumesCmd()
+				.withFilter("label", List.of(SALVAGE_ENTITY_LABEL))
+				.exec()
+				.getVolumes();
+		if (volumes != null && !volumes.isEmpty()) {
+			log.info("found {} leftover volumes from previous runs, cleaning up", volumes.size());
+			for (var volume : volumes) {
+				log.debug("removing leftover volume {}", volume.getName());
+				try {
+					docker.removeVolumeCmd(volume.getName()).exec();
+				} catch (NotFoundException ignore) {
+					// volume is gone already
+				} catch (Throwable e) {
+					log.warn("failed to remove leftover volume '{}', it might still be in use", volume.getName(), e);
+				}
+			}
+		}
 	}
 	
 	private static Map<String, SalvageVolume> getVolumeNamesForTide(DockerClient docker, SalvageTide tide) {
@@ -480,6 +928,8 @@ public class SalvageService extends AbstractService {
 	
 	private record NextTideExecution(SalvageTide tide, ZonedDateTime time) {}
 	
+	private record TideDiscovery(Map<String, SalvageVolume> volumes, List<SalvageContainer> containers) {}
+	
 	private static final class ImagePullFailedException extends Exception {
 		
 		@Getter private final boolean isPresent;
@@ -3,6 +3,7 @@ package de.chrisliebaer.salvage;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.CreateContainerResponse;
 import com.github.dockerjava.api.command.WaitContainerResultCallback;
+import com.github.dockerjava.api.exception.ConflictException;
 import com.github.dockerjava.api.exception.NotFoundException;
 import com.github.dockerjava.api.model.AccessMode;
 import com.github.dockerjava.api.model.Bind;
@@ -11,11 +12,14 @@ import com.github.dockerjava.api.model.SELContext;
 import com.github.dockerjava.api.model.Volume;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import de.chrisliebaer.salvage.entity.BackupMeta;
 import de.chrisliebaer.salvage.entity.FrameCallback;
 import de.chrisliebaer.salvage.entity.SalvageCrane;
 import de.chrisliebaer.salvage.entity.SalvageVolume;
+import de.chrisliebaer.salvage.reporting.OutputBuffer;
 import de.chrisliebaer.salvage.reporting.VolumeLog;
+import de.chrisliebaer.salvage.reporting.VolumeProgress;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
@@ -24,10 +28,18 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 @Slf4j
 public class SalvageVessel {
@@ -35,6 +47,8 @@ public class SalvageVessel {
 	// in seconds!
 	private static final int BACKUP_SHUTDOWN_GRACE_TIMEOUT = 120;
 	
+	private static final Duration KILL_GRACE_TIMEOUT = Duration.ofSeconds(10);
+	
 	private static final int ROOT_UID = 0;
 	private static final int ROOT_GID = 0;
 	
@@ -43,10 +57,35 @@ public class SalvageVessel {
 	private static final String CRANE_ENV_MACHINE_NAME = "SALVAGE_MACHINE_NAME";
 	private static final String CRANE_ENV_CRANE_NAME = "SALVAGE_CRANE_NAME";
 	private static final String CRANE_ENV_VOLUME_NAME = "SALVAGE_VOLUME_NAME";
+	private static final String CRANE_ENV_VOLUME_NAMES = "SALVAGE_VOLUME_NAMES";
 	private static final String CRANE_ENV_TIDE_TIMESTAMP = "SALVAGE_TIDE_TIMESTAMP";
+	private static final String CRANE_ENV_SHARD_INDEX = "SALVAGE_SHARD_INDEX";
+	private static final String CRANE_ENV_SHARD_COUNT = "SALVAGE_SHARD_COUNT";
+	private static final String CRANE_ENV_SHARD_INCLUDE = "SALVAGE_SHARD_INCLUDE";
+	private static final String CRANE_ENV_SHARD_EXCLUDE = "SALVAGE_SHARD_EXCLUDE";
+	private static final String CRANE_ENV_RESTORE = "SALVAGE_RESTORE";
+	private static final String CRANE_ENV_RESTORE_TIMESTAMP = "SALVAGE_RESTORE_TIMESTAMP";
+	private static final String CRANE_ENV_VERIFY = "SALVAGE_VERIFY";
 	
-	private static final String FILE_PATH_META = "/salvage/meta/meta.json";
+	private static final String FILE_PATH_META_DIRECTORY = "/salvage/meta";
+	private static final String FILE_PATH_META = FILE_PATH_META_DIRECTORY + "/meta.json";
 	private static final String FILE_PATH_VOLUME = "/salvage/volume";
+	private static final String FILE_PATH_BATCH_META_DIRECTORY = "/salvage/meta/%s";
+	private static final String FILE_PATH_BATCH_META = FILE_PATH_BATCH_META_DIRECTORY + "/meta.json";
+	private static final String FILE_PATH_BATCH_VOLUME = "/salvage/volumes/%s";
+	
+	/**
+	 * Prefix of output lines that carry structured messages from the crane instead of plain log output.
+	 */
+	private static final String PROTOCOL_PREFIX = "##salvage ";
+	private static final byte[] PROTOCOL_PREFIX_BYTES = PROTOCOL_PREFIX.getBytes(StandardCharsets.UTF_8);
+	private static final String PROTOCOL_TYPE_RESULT = "result";
+	private static final String PROTOCOL_TYPE_PROGRESS = "progress";
+	
+	/**
+	 * Minimum time between two progress log messages of the same crane.
+	 */
+	private static final Duration PROGRESS_LOG_INTERVAL = Duration.ofSeconds(30);
 	
 	private static final Gson GSON = new GsonBuilder()
 			.disableHtmlEscaping()
@@ -54,105 +93,461 @@ public class SalvageVessel {
 			.create();
 	
 	private final DockerClient docker;
-	private final SalvageVolume volume;
+	private final List<SalvageVolume> volumes;
 	private final SalvageCrane crane;
-	private final BackupMeta meta;
-	private final VolumeLog volumeLog;
+	private final BackupMeta.HostMeta hostMeta;
+	private final Map<SalvageVolume, VolumeLog> volumeLogs;
+	private final Optional<MetaStore> metaStore;
+	private final Optional<SnapshotStore> snapshots;
+	private final Optional<Restore> restore;
+	private final boolean verify;
+	private final String volumeNames;
+	
+	/**
+	 * Results reported by the crane via protocol lines, keyed by volume name. Written by the attach callback.
+	 */
+	private final Map<String, VolumeResult> results = new ConcurrentHashMap<>();
+	
+	/**
+	 * Exit code of the crane, only set once the crane exited on its own.
+	 */
+	private volatile Integer exitCode;
+	
+	/**
+	 * Bytes of crane output kept for failure reports, shared by all volumes of the vessel.
+	 */
+	private static final int OUTPUT_CAPACITY = 32 * 1024;
+	
+	private final OutputBuffer output;
+	
+	/**
+	 * Progress reported by the crane, keyed by volume name.
+	 */
+	private final Map<String, VolumeProgress> progress = new HashMap<>();
+	private volatile Instant lastProgressLog = Instant.EPOCH;
 	
-	public SalvageVessel(DockerClient docker, SalvageVolume volume, SalvageCrane crane, BackupMeta.HostMeta hostMeta, VolumeLog volumeLog) {
+	private CreateContainerResponse container;
+	private FrameCallback frameCallback;
+	
+	public SalvageVessel(DockerClient docker, SalvageVolume volume, SalvageCrane crane, BackupMeta.HostMeta hostMeta, VolumeLog volumeLog, Optional<MetaStore> metaStore,
+						 Optional<SnapshotStore> snapshots) {
+		this(docker, List.of(volume), crane, hostMeta, Map.of(volume, volumeLog), metaStore, snapshots);
+	}
+	
+	/**
+	 * Creates a vessel for multiple volumes. Unless the crane uses the batch layout, only a single volume is allowed.
+	 *
+	 * @param volumeLogs Log of each volume, crane output is logged to all of them.
+	 * @param metaStore  Metadata written ahead of time, volumes missing from the store have their metadata uploaded into the crane instead.
+	 * @param snapshots  Staging copies of volumes, which are mounted instead of the original volumes. Volumes missing from the store are mounted directly.
+	 */
+	public SalvageVessel(DockerClient docker, List<SalvageVolume> volumes, SalvageCrane crane, BackupMeta.HostMeta hostMeta, Map<SalvageVolume, VolumeLog> volumeLogs,
+						 Optional<MetaStore> metaStore, Optional<SnapshotStore> snapshots) {
+		this(docker, volumes, crane, hostMeta, volumeLogs, metaStore, snapshots, Optional.empty(), false);
+	}
+	
+	/**
+	 * Creates a vessel that restores a single volume instead of backing it up.
+	 *
+	 * @param restore Phase of the restore and where the crane finds or places the stored metadata.
+	 */
+	public SalvageVessel(DockerClient docker, SalvageVolume volume, SalvageCrane crane, BackupMeta.HostMeta hostMeta, VolumeLog volumeLog, Restore restore) {
+		this(docker, List.of(volume), crane, hostMeta, Map.of(volume, volumeLog), Optional.empty(), Optional.empty(), Optional.of(restore), false);
+	}
+	
+	private SalvageVessel(DockerClient docker, List<SalvageVolume> volumes, SalvageCrane crane, BackupMeta.HostMeta hostMeta, Map<SalvageVolume, VolumeLog> volumeLogs,
+						  Optional<MetaStore> metaStore, Optional<SnapshotStore> snapshots, Optional<Restore> restore, boolean verify) {
+		if (volumes.isEmpty() || volumes.size() > crane.batchSize())
+			throw new IllegalArgumentException("crane '" + crane.name() + "' can't back up " + volumes.size() + " volumes at once");
+		
 		this.docker = docker;
-		this.volume = volume;
+		this.volumes = List.copyOf(volumes);
 		this.crane = crane;
-		this.volumeLog = volumeLog;
+		this.hostMeta = hostMeta;
+		this.volumeLogs = Map.copyOf(volumeLogs);
+		this.metaStore = metaStore;
+		this.snapshots = snapshots;
+		this.restore = restore;
+		this.verify = verify;
+		volumeNames = volumes.stream().map(SalvageVolume::name).collect(Collectors.joining(", "));
 		
-		meta = new BackupMeta(hostMeta, volume.meta(), crane.name(), crane.image());
+		output = new OutputBuffer("crane '" + crane.name() + "' for volume '" + volumeNames + "'", OUTPUT_CAPACITY, this::handleLine);
+		for (var entry : this.volumeLogs.entrySet()) {
+			var volumeProgress = new VolumeProgress();
+			progress.put(entry.getKey().name(), volumeProgress);
+			entry.getValue().output(output);
+			entry.getValue().progress(volumeProgress);
+		}
+	}
+	
+	/**
+	 * Creates a vessel that verifies the latest backup of the given volumes instead of backing them up. Volumes are not mounted and the crane runs with throttled
+	 * resources, since verification must not compete with containers or backups for resources.
+	 */
+	public static SalvageVessel verify(DockerClient docker, List<SalvageVolume> volumes, SalvageCrane crane, BackupMeta.HostMeta hostMeta,
+									   Map<SalvageVolume, VolumeLog> volumeLogs) {
+		return new SalvageVessel(docker, volumes, crane, hostMeta, volumeLogs, Optional.empty(), Optional.empty(), Optional.empty(), true);
 	}
 	
+	/**
+	 * Prepares and launches the crane in one go.
+	 */
 	public void start() throws Throwable {
+		prepare();
+		launch();
+	}
+	
+	/**
+	 * Creates the crane container, uploads metadata and attaches to its output, without starting it. This allows preparing cranes ahead of time, so only
+	 * {@link #launch()} remains once containers have been stopped.
+	 */
+	public void prepare() throws Throwable {
+		if (container != null)
+			throw new IllegalStateException("crane for volume '" + volumeNames + "' has already been prepared");
+		
 		var env = new HashMap<>(crane.env());
-		env.put(CRANE_ENV_MACHINE_NAME, meta.hostMeta().host());
-		env.put(CRANE_ENV_CRANE_NAME, meta.crane());
-		env.put(CRANE_ENV_VOLUME_NAME, volume.name());
-		//noinspection MagicNumber
-		env.put(CRANE_ENV_TIDE_TIMESTAMP, String.valueOf(meta.hostMeta().executionStart() / 1000L));
+		env.put(CRANE_ENV_MACHINE_NAME, hostMeta.host());
+		env.put(CRANE_ENV_CRANE_NAME, crane.name());
+		if (crane.batched())
+			env.put(CRANE_ENV_VOLUME_NAMES, volumes.stream().map(SalvageVolume::name).collect(Collectors.joining(",")));
+		else
+			env.put(CRANE_ENV_VOLUME_NAME, volumes.getFirst().name());
+		if (restore.isPresent()) {
+			env.put(CRANE_ENV_RESTORE, restore.get().phase().name().toLowerCase(Locale.ROOT));
+			restore.get().timestamp().ifPresent(timestamp -> env.put(CRANE_ENV_RESTORE_TIMESTAMP, String.valueOf(timestamp)));
+		} else {
+			if (verify)
+				env.put(CRANE_ENV_VERIFY, "true");
+			//noinspection MagicNumber
+			env.put(CRANE_ENV_TIDE_TIMESTAMP, String.valueOf(hostMeta.executionStart() / 1000L));
+		}
 		
-		var container = docker.createContainerCmd(crane.image())
+		// shards are never batched, entries are separated by line breaks since they may contain any other character
+		var shard = volumes.getFirst().shard();
+		if (shard.isPresent()) {
+			env.put(CRANE_ENV_SHARD_INDEX, String.valueOf(shard.get().index()));
+			env.put(CRANE_ENV_SHARD_COUNT, String.valueOf(shard.get().count()));
+			if (shard.get().include().isEmpty())
+				env.put(CRANE_ENV_SHARD_EXCLUDE, String.join("\n", shard.get().exclude()));
+			else
+				env.put(CRANE_ENV_SHARD_INCLUDE, String.join("\n", shard.get().include()));
+		}
+		
+		container = docker.createContainerCmd(crane.image())
 				.withEnv(prepareEnv(env))
 				.withLabels(Map.of(SalvageService.SALVAGE_ENTITY_LABEL, "crane"))
 				.withStopTimeout(BACKUP_SHUTDOWN_GRACE_TIMEOUT)
-				.withHostConfig(HostConfig.newHostConfig()
+				.withHostConfig((verify ? crane.resources().throttled() : crane.resources()).apply(HostConfig.newHostConfig()
 						// TODO: waiting for container to exit is broken and subject to a race condition, remove autoremove and simply remove container by hand
 						.withAutoRemove(true)
-						.withBinds(prepareBinds()))
+						.withBinds(prepareBinds())))
 				.exec();
-		log.info("created container '{}' for crane '{}' to backup volume '{}'", container.getId(), crane.name(), volume.name());
+		log.info("created container '{}' for crane '{}' to {} volume '{}'", container.getId(), crane.name(), action(), volumeNames);
 		
 		try {
-			startBackupContainer(container);
+			attachBackupContainer(container);
 		} catch (Throwable e) {
-			
+			throw cleanup(e);
+		}
+	}
+	
+	/**
+	 * Starts the crane and waits for it to finish. Prepares the crane first, if that hasn't happened yet.
+	 */
+	public void launch() throws Throwable {
+		launch(Optional.empty());
+	}
+	
+	/**
+	 * Starts the crane and waits for it to finish, but kills it once it exceeds the given deadline, its own timeout or produces no output for longer than its stall
+	 * timeout. Prepares the crane first, if that hasn't happened yet.
+	 *
+	 * @param deadline Point in time at which the crane is killed, regardless of its own timeouts.
+	 * @throws TimeoutException If the crane has been killed by the watchdog.
+	 */
+	public void launch(Optional<Instant> deadline) throws Throwable {
+		if (container == null)
+			prepare();
+		
+		try {
+			startBackupContainer(container, deadline);
+		} catch (InterruptedException e) {
+			// docker-java doesn't react to interrupts, so the crane is killed, otherwise it would keep using the volume after its task has been cancelled
+			kill(container);
+			throw cleanup(new InterruptedException(action() + " of volume '" + volumeNames + "' has been cancelled"));
+		} catch (Throwable e) {
+			throw cleanup(e);
+		}
+	}
+	
+	/**
+	 * @param volume Volume to look up.
+	 * @return Result the crane reported for the given volume, if any.
+	 */
+	public Optional<VolumeResult> result(SalvageVolume volume) {
+		return Optional.ofNullable(results.get(volume.name()));
+	}
+	
+	/**
+	 * @return Exit code of the crane, empty if it hasn't exited on its own, for example because it was killed or never started.
+	 */
+	public Optional<Integer> exitCode() {
+		return Optional.ofNullable(exitCode);
+	}
+	
+	/**
+	 * Removes a prepared crane that will not be launched.
+	 */
+	public void discard() {
+		if (container == null)
+			return;
+		
+		if (frameCallback != null) {
 			try {
-				// since we are using auto remove, docker will remove the container for us unless it has never been started
-				// todo can fail if container is already removed
-				var inspect = docker.inspectContainerCmd(container.getId()).exec();
-				if ("created".equalsIgnoreCase(inspect.getState().getStatus())) {
-					docker.removeContainerCmd(container.getId())
-							.withForce(true)
-							.withRemoveVolumes(true)
-							.exec();
-				}
-			} catch (NotFoundException ignore) {
-				// container was already removed, ignore
-			} catch (Throwable e2) {
-				e.addSuppressed(e2);
-				//noinspection ThrowInsideCatchBlockWhichIgnoresCaughtException
-				throw new RuntimeException("failed to remove container '" + container.getId() + "' in response to error during backup", e);
+				frameCallback.close();
+			} catch (Throwable e) {
+				log.debug("failed to detach from crane container '{}'", container.getId(), e);
 			}
-			// if we succeeded to remove the container, we rethrow the original exception
-			log.debug("backup of '{}' failed but we still managed to remove crane container '{}'", volume.name(), container.getId());
-			
-			
-			throw e;
+		}
+		try {
+			docker.removeContainerCmd(container.getId())
+					.withForce(true)
+					.withRemoveVolumes(true)
+					.exec();
+			log.debug("discarded prepared crane container '{}' for volume '{}'", container.getId(), volumeNames);
+		} catch (NotFoundException ignore) {
+			// container was already removed, ignore
+		} catch (Throwable e) {
+			log.warn("failed to remove prepared crane container '{}', it will be removed on next start", container.getId(), e);
 		}
 	}
 	
-	private void startBackupContainer(CreateContainerResponse container) throws Throwable {
-		// upload metadata into container, so they will be backed up by the crane
-		byte[] metaTar = createMetaArchive(meta);
-		docker.copyArchiveToContainerCmd(container.getId())
-				.withTarInputStream(new ByteArrayInputStream(metaTar))
-				.withRemotePath("/")
-				.exec();
-		log.trace("uploaded meta data to container '{}': {}", container.getId(), meta);
+	private Throwable cleanup(Throwable e) {
+		try {
+			// since we are using auto remove, docker will remove the container for us unless it has never been started
+			// todo can fail if container is already removed
+			var inspect = docker.inspectContainerCmd(container.getId()).exec();
+			if ("created".equalsIgnoreCase(inspect.getState().getStatus())) {
+				docker.removeContainerCmd(container.getId())
+						.withForce(true)
+						.withRemoveVolumes(true)
+						.exec();
+			}
+		} catch (NotFoundException ignore) {
+			// container was already removed, ignore
+		} catch (Throwable e2) {
+			e.addSuppressed(e2);
+			return new RuntimeException("failed to remove container '" + container.getId() + "' in response to error during " + action(), e);
+		}
+		// if we succeeded to remove the container, we rethrow the original exception
+		log.debug("{} of '{}' failed but we still managed to remove crane container '{}'", action(), volumeNames, container.getId());
+		return e;
+	}
+	
+	private void attachBackupContainer(CreateContainerResponse container) throws Throwable {
+		// upload metadata into container, so they will be backed up by the crane, unless it has been mounted from the meta store
+		var metas = new LinkedHashMap<String, BackupMeta>();
+		for (var volume : volumes) {
+			if (restore.isPresent() || verify || metaVolume(volume).isPresent())
+				continue;
+			
+			var path = crane.batched() ? FILE_PATH_BATCH_META.formatted(volume.name()) : FILE_PATH_META;
+			metas.put(path, new BackupMeta(hostMeta, volume.meta(), crane.name(), crane.image()));
+		}
+		if (!metas.isEmpty()) {
+			byte[] metaTar = createMetaArchive(metas);
+			docker.copyArchiveToContainerCmd(container.getId())
+					.withTarInputStream(new ByteArrayInputStream(metaTar))
+					.withRemotePath("/")
+					.exec();
+			log.trace("uploaded meta data to container '{}': {}", container.getId(), metas);
+		}
 		
-		var frameCallback = docker.attachContainerCmd(container.getId())
+		frameCallback = docker.attachContainerCmd(container.getId())
 				.withStdOut(true)
 				.withStdErr(true)
 				.withFollowStream(true)
-				.exec(new FrameCallback(frame -> {
-					var line = new String(frame.getPayload(), StandardCharsets.UTF_8).trim();
-					volumeLog.log(line);
-					log.debug("[{}@{}] {}", volume.name(), crane.name(), line);
-				}));
-		log.trace("starting backup container '{}' for volume '{}'", container.getId(), volume.name());
+				.exec(new FrameCallback(frame -> output.append(frame.getPayload())));
+	}
+	
+	/**
+	 * Handles a complete line of crane output.
+	 *
+	 * @return {@code true} if the line was a protocol message and should not be kept as output.
+	 */
+	private boolean handleLine(OutputBuffer.Line line) {
+		if (line.startsWith(PROTOCOL_PREFIX_BYTES) && handleProtocolLine(line.toString()))
+			return true;
+		
+		if (log.isDebugEnabled() && line.permitLog())
+			log.debug("[{}@{}] {}", volumeNames, crane.name(), line.toString());
+		return false;
+	}
+	
+	/**
+	 * Handles structured messages of the crane.
+	 *
+	 * @param line Output line of the crane.
+	 * @return {@code true} if the line was a protocol message and has been handled.
+	 */
+	private boolean handleProtocolLine(String line) {
+		if (!line.startsWith(PROTOCOL_PREFIX))
+			return false;
+		
+		ProtocolMessage message;
+		try {
+			message = GSON.fromJson(line.substring(PROTOCOL_PREFIX.length()), ProtocolMessage.class);
+		} catch (JsonParseException e) {
+			log.warn("crane '{}' sent malformed protocol message: {}", crane.name(), line, e);
+			return false;
+		}
+		if (message == null || message.type == null)
+			return false;
+		
+		// single volume cranes may omit the volume
+		var volumeName = message.volume != null ? message.volume : volumes.getFirst().name();
+		if (volumes.stream().noneMatch(v -> v.name().equals(volumeName))) {
+			log.warn("crane '{}' reported {} for unknown volume '{}'", crane.name(), message.type, volumeName);
+			return true;
+		}
+		
+		if (PROTOCOL_TYPE_PROGRESS.equals(message.type)) {
+			var now = Instant.now();
+			var volumeProgress = progress.get(volumeName);
+			volumeProgress.update(Optional.ofNullable(message.phase), Optional.ofNullable(message.bytesProcessed), Optional.ofNullable(message.bytesTotal),
+					Optional.ofNullable(message.filesProcessed), Optional.ofNullable(message.bytesUploaded), now);
+			
+			// cranes may report progress many times per second
+			if (log.isDebugEnabled() && Duration.between(lastProgressLog, now).compareTo(PROGRESS_LOG_INTERVAL) >= 0) {
+				lastProgressLog = now;
+				volumeProgress.summary().ifPresent(summary -> log.debug("crane '{}' progress for volume '{}': {}", crane.name(), volumeName, summary));
+			}
+			return true;
+		}
+		
+		if (PROTOCOL_TYPE_RESULT.equals(message.type)) {
+			var success = Boolean.TRUE.equals(message.success);
+			results.put(volumeName, new VolumeResult(success, message.message != null ? message.message : ""));
+			log.debug("crane '{}' reported {} for volume '{}'", crane.name(), success ? "success" : "failure", volumeName);
+			return true;
+		}
+		
+		log.debug("ignoring unknown protocol message of type '{}' from crane '{}'", message.type, crane.name());
+		return true;
+	}
+	
+	private void startBackupContainer(CreateContainerResponse container, Optional<Instant> deadline) throws Throwable {
+		log.trace("starting {} container '{}' for volume '{}'", action(), container.getId(), volumeNames);
 		docker.startContainerCmd(container.getId()).exec();
+		var startedAt = Instant.now();
+		progress.values().forEach(p -> p.start(startedAt));
 		var waitCallback = docker.waitContainerCmd(container.getId()).exec(new WaitContainerResultCallback());
 		
-		// docker-java eats interrupted exception, so use our own callback first (still doesn't fully address the problem)
-		frameCallback.join();
+		// wait on the output stream rather than the exit code, since only our own callback can be woken up for timeouts and interrupts
+		var cutoff = earliest(deadline, crane.timeout().map(startedAt::plus));
+		watch(container, startedAt, cutoff);
+		output.flush();
+		for (var entry : progress.entrySet())
+			entry.getValue().summary().ifPresent(summary -> log.info("final progress of crane '{}' for volume '{}': {}", crane.name(), entry.getKey(), summary));
 		var statusCode = waitCallback.awaitStatusCode();
+		exitCode = statusCode;
 		if (statusCode != 0) {
-			throw new RuntimeException("backup of volume '" + volume.name() + "' failed with exit code " + statusCode);
+			throw new RuntimeException(action() + " of volume '" + volumeNames + "' failed with exit code " + statusCode);
+		}
+	}
+	
+	/**
+	 * Waits for the output stream of the crane to end, which happens once the crane exits. Wakes up at the cutoff or once the crane has been silent for its stall
+	 * timeout, whichever comes first, and kills the crane if either has been reached.
+	 */
+	private void watch(CreateContainerResponse container, Instant startedAt, Optional<Instant> cutoff) throws Throwable {
+		while (true) {
+			var stalledAt = crane.stallTimeout().map(lastActivity(startedAt)::plus);
+			var wakeup = earliest(cutoff, stalledAt);
+			
+			if (wakeup.isEmpty()) {
+				frameCallback.join();
+				return;
+			}
+			if (frameCallback.join(Duration.between(Instant.now(), wakeup.get())))
+				return;
+			
+			var now = Instant.now();
+			if (cutoff.isPresent() && !now.isBefore(cutoff.get())) {
+				kill(container);
+				throw new TimeoutException(action() + " of volume '" + volumeNames + "' exceeded timeout after " + SalvageMain.formatDuration(Duration.between(startedAt, now)));
+			}
+			
+			// output might have arrived while we were waiting, so stall time needs to be checked against the latest frame
+			var silence = Duration.between(lastActivity(startedAt), now);
+			if (crane.stallTimeout().isPresent() && silence.compareTo(crane.stallTimeout().get()) >= 0) {
+				kill(container);
+				throw new TimeoutException(action() + " of volume '" + volumeNames + "' stalled, crane produced no output for " + SalvageMain.formatDuration(silence));
+			}
+		}
+	}
+	
+	private Instant lastActivity(Instant startedAt) {
+		// frames received before the crane was started don't count, since prepared cranes might have been waiting for a while
+		var lastFrame = frameCallback.lastFrame();
+		return lastFrame.isAfter(startedAt) ? lastFrame : startedAt;
+	}
+	
+	private void kill(CreateContainerResponse container) {
+		log.warn("killing crane container '{}' for volume '{}'", container.getId(), volumeNames);
+		try {
+			docker.killContainerCmd(container.getId()).exec();
+		} catch (NotFoundException | ConflictException ignore) {
+			// container already exited on its own
+		}
+		
+		// killed container will close output stream, but we don't want to wait forever if the daemon itself is stuck
+		try {
+			frameCallback.join(KILL_GRACE_TIMEOUT);
+		} catch (Throwable e) {
+			log.debug("output stream of killed crane container '{}' closed with error", container.getId(), e);
 		}
 	}
 	
+	private static Optional<Instant> earliest(Optional<Instant> a, Optional<Instant> b) {
+		if (a.isEmpty())
+			return b;
+		if (b.isEmpty())
+			return a;
+		return a.get().isBefore(b.get()) ? a : b;
+	}
+	
 	private List<Bind> prepareBinds() {
 		
 		// WARNING: docker-java is a dumpsterfire and completly misunderstands how volumes and binds work, the following code is correct
 		var binds = new ArrayList<Bind>();
+		if (restore.isPresent()) {
+			prepareRestoreBinds(restore.get(), binds);
+			return binds;
+		}
+		
+		// verification only needs access to the backup, which is configured via crane mounts
+		if (verify) {
+			for (var mount : crane.mounts().entrySet())
+				binds.add(new Bind(mount.getKey(), new Volume(mount.getValue()), AccessMode.rw, SELContext.DEFAULT, false));
+			return binds;
+		}
+		
+		// mount volumes as ro for backup, staging copies keep the path of their original volume
+		for (var volume : volumes) {
+			var path = crane.batched() ? FILE_PATH_BATCH_VOLUME.formatted(volume.name()) : FILE_PATH_VOLUME;
+			var source = snapshots.flatMap(s -> s.volume(volume.whole())).orElse(volume.name());
+			binds.add(new Bind(source, new Volume(path), AccessMode.ro, SELContext.DEFAULT, true));
+		}
 		
-		// mount volume as ro for backup
-		binds.add(new Bind(volume.name(), new Volume(FILE_PATH_VOLUME), AccessMode.ro, SELContext.DEFAULT, true));
+		// metadata written ahead of time keeps the layout of uploaded metadata
+		for (var volume : volumes) {
+			var metaVolume = metaVolume(volume);
+			if (metaVolume.isPresent()) {
+				var path = crane.batched() ? FILE_PATH_BATCH_META_DIRECTORY.formatted(volume.name()) : FILE_PATH_META_DIRECTORY;
+				binds.add(new Bind(metaVolume.get(), new Volume(path), AccessMode.ro, SELContext.DEFAULT, true));
+			}
+		}
 		
 		// add crane specific volumes
 		for (var mount : crane.mounts().entrySet())
@@ -161,6 +556,33 @@ public class SalvageVessel {
 		return binds;
 	}
 	
+	private void prepareRestoreBinds(Restore restore, List<Bind> binds) {
+		var volume = volumes.getFirst();
+		var volumePath = crane.batched() ? FILE_PATH_BATCH_VOLUME.formatted(volume.name()) : FILE_PATH_VOLUME;
+		var metaPath = crane.batched() ? FILE_PATH_BATCH_META_DIRECTORY.formatted(volume.name()) : FILE_PATH_META_DIRECTORY;
+		
+		// volume doesn't exist until its metadata has been restored
+		if (restore.phase() == RestorePhase.META) {
+			binds.add(new Bind(restore.metaVolume(), new Volume(metaPath), AccessMode.rw, SELContext.DEFAULT, true));
+		} else {
+			binds.add(new Bind(volume.name(), new Volume(volumePath), AccessMode.rw, SELContext.DEFAULT, true));
+			binds.add(new Bind(restore.metaVolume(), new Volume(metaPath), AccessMode.ro, SELContext.DEFAULT, true));
+		}
+		
+		for (var mount : crane.mounts().entrySet())
+			binds.add(new Bind(mount.getKey(), new Volume(mount.getValue()), AccessMode.rw, SELContext.DEFAULT, false));
+	}
+	
+	private String action() {
+		if (restore.isPresent())
+			return "restore";
+		return verify ? "verification" : "backup";
+	}
+	
+	private Optional<String> metaVolume(SalvageVolume volume) {
+		return metaStore.flatMap(store -> store.volume(volume.whole(), crane));
+	}
+	
 	private static List<String> prepareEnv(Map<String, String> env) {
 		var result = new ArrayList<String>();
 		for (var entry : env.entrySet())
@@ -168,22 +590,69 @@ public class SalvageVessel {
 		return result;
 	}
 	
-	private static byte[] createMetaArchive(BackupMeta meta) throws IOException {
-		// convert meta data to json
-		var json = GSON.toJson(meta);
-		var jsonBytes = json.getBytes(StandardCharsets.UTF_8);
-		
+	static byte[] createMetaArchive(Map<String, BackupMeta> metas) throws IOException {
 		var out = new ByteArrayOutputStream();
 		try (var tar = new TarArchiveOutputStream(out)) {
-			var entry = new TarArchiveEntry(FILE_PATH_META);
-			entry.setUserId(ROOT_UID);
-			entry.setGroupId(ROOT_GID);
-			entry.setMode(MODE_WORLD_READABLE);
-			entry.setSize(jsonBytes.length);
-			tar.putArchiveEntry(entry);
-			tar.write(jsonBytes);
-			tar.closeArchiveEntry();
+			for (var meta : metas.entrySet()) {
+				// convert meta data to json
+				var json = GSON.toJson(meta.getValue());
+				var jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+				
+				var entry = new TarArchiveEntry(meta.getKey());
+				entry.setUserId(ROOT_UID);
+				entry.setGroupId(ROOT_GID);
+				entry.setMode(MODE_WORLD_READABLE);
+				entry.setSize(jsonBytes.length);
+				tar.putArchiveEntry(entry);
+				tar.write(jsonBytes);
+				tar.closeArchiveEntry();
+			}
 		}
 		return out.toByteArray();
 	}
+	
+	/**
+	 * @param success Whether the crane managed to back up the volume.
+	 * @param message Message of the crane, empty if none was given.
+	 */
+	public record VolumeResult(boolean success, String message) {}
+	
+	/**
+	 * Restores are split into two phases, since the volume can only be created once its metadata is known.
+	 */
+	public enum RestorePhase {
+		/**
+		 * Crane writes the stored metadata of the volume into the metadata directory, the volume itself is not mounted.
+		 */
+		META,
+		
+		/**
+		 * Crane restores the content of the volume, which is mounted read-write.
+		 */
+		VOLUME
+	}
+	
+	/**
+	 * @param phase      Phase of the restore.
+	 * @param metaVolume Volume mounted as metadata directory, writable during {@link RestorePhase#META} and read-only afterwards.
+	 * @param timestamp  Tide timestamp of the backup to restore, in seconds since epoch, empty for the latest backup.
+	 */
+	public record Restore(RestorePhase phase, String metaVolume, Optional<Long> timestamp) {}
+	
+	/**
+	 * Structured message sent by the crane as a single output line, prefixed with {@link #PROTOCOL_PREFIX}. This is a mutable class rather than a record, since Gson
+	 * can't deserialize records.
+	 */
+	private static final class ProtocolMessage {
+		
+		private String type;
+		private String volume;
+		private Boolean success;
+		private String message;
+		private String phase;
+		private Long bytesProcessed;
+		private Long bytesTotal;
+		private Long filesProcessed;
+		private Long bytesUploaded;
+	}
 }
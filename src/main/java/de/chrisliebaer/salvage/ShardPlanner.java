@@ -0,0 +1,138 @@
+package de.chrisliebaer.salvage;
+
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits volumes into shards of similar size, so several crane containers can back up a single large volume at the same time. Shards are formed from the top-level
+ * entries of a volume, which are measured by a helper container before any container is stopped. Entries are assigned largest first to the currently smallest shard.
+ */
+@Slf4j
+public class ShardPlanner {
+	
+	/**
+	 * Lists all top-level entries, including hidden ones, with their size in kibibytes. Records are separated by NUL, since entry names may contain line breaks.
+	 */
+	private static final String LIST_SCRIPT = "cd \"$0\" && for e in * .[!.]* ..?*; do if [ -e \"$e\" ] || [ -L \"$e\" ]; then printf '%s\\t%s\\0' \"$(du -sk \"$e\" | cut -f1)\" \"$e\"; fi; done";
+	
+	private final HelperContainer helper;
+	
+	public ShardPlanner(HelperContainer helper) {
+		this.helper = helper;
+	}
+	
+	/**
+	 * Plans shards for all volumes configured to use more than one shard. Failures are logged and the affected volume is backed up as a whole.
+	 *
+	 * @param volumes Volumes to plan.
+	 * @return Shards of each sharded volume, volumes that are not sharded are missing.
+	 */
+	public Map<SalvageVolume, List<SalvageVolume>> plan(Collection<SalvageVolume> volumes) throws InterruptedException {
+		var shards = new HashMap<SalvageVolume, List<SalvageVolume>>();
+		for (var volume : volumes) {
+			if (volume.shards() < 2)
+				continue;
+			
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			
+			try {
+				var planned = plan(volume);
+				if (planned.size() > 1)
+					shards.put(volume, planned);
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable e) {
+				log.warn("failed to plan shards of volume '{}', backing it up as a whole", volume.name(), e);
+			}
+		}
+		return shards;
+	}
+	
+	private List<SalvageVolume> plan(SalvageVolume volume) throws Throwable {
+		var output = helper.run(volume, "sh", "-c", LIST_SCRIPT, HelperContainer.FILE_PATH_VOLUME);
+		var entries = new ArrayList<Entry>();
+		for (var record : output.split("\0")) {
+			if (record.isEmpty())
+				continue;
+			
+			var separator = record.indexOf('\t');
+			if (separator < 0)
+				throw new IllegalStateException("unexpected helper output: " + record);
+			
+			// entries are passed to cranes as lines
+			var name = record.substring(separator + 1);
+			if (name.indexOf('\n') >= 0)
+				throw new IllegalStateException("entry '" + name.strip() + "' contains a line break");
+			entries.add(new Entry(name, Long.parseLong(record.substring(0, separator).trim())));
+		}
+		
+		var count = Math.min(volume.shards(), entries.size());
+		if (count < 2) {
+			log.debug("volume '{}' has {} top-level entries, backing it up as a whole", volume.name(), entries.size());
+			return List.of(volume);
+		}
+		
+		var parts = partition(entries, count);
+		
+		// first shard covers everything that is not part of another shard, so entries created after planning are not missed
+		var covered = new ArrayList<String>();
+		for (int i = 1; i < count; i++)
+			covered.addAll(parts.get(i).entries());
+		
+		var shards = new ArrayList<SalvageVolume>(count);
+		shards.add(volume.shard(0, count, List.of(), covered));
+		for (int i = 1; i < count; i++)
+			shards.add(volume.shard(i, count, parts.get(i).entries(), List.of()));
+		
+		if (log.isDebugEnabled()) {
+			for (int i = 0; i < count; i++)
+				log.debug("shard {} of volume '{}' covers {} entries with {} KiB", i, volume.name(), parts.get(i).entries().size(), parts.get(i).kib());
+		}
+		return shards;
+	}
+	
+	/**
+	 * Distributes entries into the given number of parts of similar size, by assigning them largest first to the currently smallest part.
+	 *
+	 * @param entries Entries to distribute.
+	 * @param count   Number of parts, parts stay empty if there are fewer entries.
+	 * @return Parts in order of their index, ties between equally sized parts go to the lowest index.
+	 */
+	static List<Part> partition(List<Entry> entries, int count) {
+		var sorted = entries.stream().sorted(Comparator.comparingLong(Entry::kib).reversed()).toList();
+		var names = new ArrayList<List<String>>();
+		var sizes = new long[count];
+		for (int i = 0; i < count; i++)
+			names.add(new ArrayList<>());
+		for (var entry : sorted) {
+			var smallest = 0;
+			for (int i = 1; i < count; i++) {
+				if (sizes[i] < sizes[smallest])
+					smallest = i;
+			}
+			names.get(smallest).add(entry.name());
+			sizes[smallest] += entry.kib();
+		}
+		
+		var parts = new ArrayList<Part>(count);
+		for (int i = 0; i < count; i++)
+			parts.add(new Part(names.get(i), sizes[i]));
+		return parts;
+	}
+	
+	record Entry(String name, long kib) {}
+	
+	/**
+	 * @param entries Names of the entries of this part.
+	 * @param kib     Combined size of all entries in kibibytes.
+	 */
+	record Part(List<String> entries, long kib) {}
+}
@@ -0,0 +1,165 @@
+package de.chrisliebaer.salvage;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.SELContext;
+import com.github.dockerjava.api.model.Volume;
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import de.chrisliebaer.salvage.planning.DurationEstimator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Copies volumes into staging volumes managed by salvage, so containers only need to stay down while their volumes are copied instead of for the entire crane run.
+ * Cranes back up the read-only staging copy under the name of the original volume. Copies use reflinks if the filesystem supports them, which takes seconds regardless of
+ * volume size, otherwise all files are copied in full.
+ */
+@Slf4j
+public class SnapshotStore implements AutoCloseable {
+	
+	public static final String ENTITY = "snapshot";
+	
+	private static final String FILE_PATH_SOURCE = "/salvage/source/%d";
+	private static final String FILE_PATH_STAGING = "/salvage/staging/%d";
+	
+	/**
+	 * Copies pairs of source and staging directories. GNU cp uses reflinks where possible, while busybox cp doesn't know the option and falls back to a plain copy.
+	 */
+	private static final String COPY_SCRIPT = """
+			set -e
+			while [ $# -gt 0 ]; do
+				cp -a --reflink=auto "$1"/. "$2"/ 2>/dev/null || cp -a "$1"/. "$2"/
+				shift 2
+			done
+			""";
+	
+	/**
+	 * Assumed throughput of a plain copy, used to predict downtime. Reflink copies are much faster, so predictions err on the long side.
+	 */
+	private static final long ASSUMED_COPY_BYTES_PER_SECOND = 100L * 1024 * 1024;
+	
+	private final DockerClient docker;
+	private final HelperContainer helper;
+	
+	/**
+	 * Names of the staging volumes, keyed by the volume they are a copy of.
+	 */
+	private final Map<SalvageVolume, String> volumes = new HashMap<>();
+	
+	private SnapshotStore(DockerClient docker, HelperContainer helper) {
+		this.docker = docker;
+		this.helper = helper;
+	}
+	
+	/**
+	 * Creates empty staging volumes for all given volumes. Creating them ahead of time allows cranes to be prepared before containers are stopped.
+	 *
+	 * @param prefix  Prefix of the created volume names, needs to be unique for every execution.
+	 * @param volumes Volumes that will be copied.
+	 */
+	public static SnapshotStore create(DockerClient docker, HelperContainer helper, String prefix, Collection<SalvageVolume> volumes) {
+		var store = new SnapshotStore(docker, helper);
+		try {
+			for (var volume : volumes) {
+				var name = prefix + "-" + store.volumes.size();
+				docker.createVolumeCmd()
+						.withName(name)
+						.withLabels(Map.of(SalvageService.SALVAGE_ENTITY_LABEL, ENTITY))
+						.exec();
+				store.volumes.put(volume, name);
+			}
+			
+			log.debug("created {} staging volumes for snapshots", store.volumes.size());
+			return store;
+		} catch (Throwable e) {
+			store.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return Name of the staging volume of the given volume, if it has not been released yet.
+	 */
+	public Optional<String> volume(SalvageVolume volume) {
+		return Optional.ofNullable(volumes.get(volume));
+	}
+	
+	/**
+	 * Copies the given volumes into their staging volumes, using a single helper container. Needs to be called while all containers using the volumes are down.
+	 *
+	 * @param volumes Volumes to copy.
+	 */
+	public void copy(Collection<SalvageVolume> volumes) throws Throwable {
+		var binds = new ArrayList<Bind>();
+		var command = new ArrayList<>(List.of("sh", "-c", COPY_SCRIPT, "sh"));
+		for (var volume : volumes) {
+			var staging = volume(volume).orElseThrow(() -> new IllegalStateException("volume '" + volume.name() + "' has no staging volume"));
+			var source = FILE_PATH_SOURCE.formatted(binds.size());
+			var target = FILE_PATH_STAGING.formatted(binds.size());
+			binds.add(new Bind(volume.name(), new Volume(source), AccessMode.ro, SELContext.DEFAULT, true));
+			binds.add(new Bind(staging, new Volume(target), AccessMode.rw, SELContext.DEFAULT, true));
+			command.add(source);
+			command.add(target);
+		}
+		
+		var start = System.nanoTime();
+		helper.run("snapshot of " + volumes.size() + " volumes", binds, command.toArray(String[]::new));
+		log.debug("copied {} volumes into staging volumes in {}", volumes.size(), Duration.ofNanos(System.nanoTime() - start));
+	}
+	
+	/**
+	 * Predicts how long copying the given volumes will take, assuming a plain copy.
+	 *
+	 * @param sizes    Size of each volume in bytes, if measured.
+	 * @param fallback Used for volumes of unknown size. A backup is never faster than a plain copy, so this overestimates rather than assuming empty volumes.
+	 */
+	public Duration estimate(Collection<SalvageVolume> volumes, Function<SalvageVolume, Optional<Long>> sizes, DurationEstimator fallback) {
+		long bytes = 0;
+		var unmeasured = Duration.ZERO;
+		for (var volume : volumes) {
+			var size = sizes.apply(volume);
+			if (size.isPresent())
+				bytes += size.get();
+			else
+				unmeasured = unmeasured.plus(fallback.estimate(volume));
+		}
+		return Duration.ofMillis(bytes * 1000 / ASSUMED_COPY_BYTES_PER_SECOND).plus(unmeasured);
+	}
+	
+	/**
+	 * Removes the staging volumes of the given volumes. Must only be called once no crane is using them anymore.
+	 */
+	public void release(Collection<SalvageVolume> volumes) {
+		for (var volume : volumes) {
+			var name = this.volumes.remove(volume);
+			if (name == null)
+				continue;
+			
+			try {
+				docker.removeVolumeCmd(name).exec();
+			} catch (NotFoundException ignore) {
+				// volume is gone already
+			} catch (Throwable e) {
+				log.warn("failed to remove staging volume '{}', it will be removed on next start", name, e);
+			}
+		}
+	}
+	
+	/**
+	 * Removes all remaining staging volumes.
+	 */
+	@Override
+	public void close() {
+		release(List.copyOf(volumes.keySet()));
+	}
+}
@@ -3,15 +3,26 @@ package de.chrisliebaer.salvage;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.InspectContainerResponse;
 import de.chrisliebaer.salvage.entity.SalvageContainer;
+import de.chrisliebaer.salvage.grouping.ContainerWaves;
+import de.chrisliebaer.salvage.reporting.ActionDecision;
+import de.chrisliebaer.salvage.reporting.DowntimeBreach;
+import de.chrisliebaer.salvage.reporting.TideLog;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.ThreadContext;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * This class is responsible for changing and maintaining the state of containers during backups. It implements AutoCloseable to be able to roll back the state of
- * containers in all cases.
+ * containers in all cases. Containers are prepared and restored in waves according to their compose dependencies, with all containers of a wave being handled in
+ * parallel.
  */
 @Slf4j
 @AllArgsConstructor
@@ -28,27 +39,136 @@ public class StateTransaction implements AutoCloseable {
 	private static final int RETRY_DELAY = 5000;
 	
 	private final DockerClient docker;
-	private final Map<SalvageContainer, AffectedContainer> affectedContainers = new IdentityHashMap<>();
+	private final TideLog tideLog;
+	private final Map<SalvageContainer, AffectedContainer> affectedContainers = Collections.synchronizedMap(new IdentityHashMap<>());
 	
 	@Override
 	public void close() {
-		if (affectedContainers.isEmpty())
+		List<SalvageContainer> remaining;
+		synchronized (affectedContainers) {
+			remaining = List.copyOf(affectedContainers.keySet());
+		}
+		if (remaining.isEmpty())
 			return;
 		
-		log.warn("found {} containers in backup state, assuming failure and rolling back container state", affectedContainers.size());
-		for (var entry : affectedContainers.entrySet()) {
-			var container = entry.getKey();
-			var state = entry.getValue();
+		// attempt to roll back every container, even if some of them fail
+		log.warn("found {} containers in backup state, assuming failure and rolling back container state", remaining.size());
+		var failure = runWaves(ContainerWaves.startOrder(remaining), container -> {
 			log.debug("rolling back container {}", container.name());
 			try {
 				restore(container);
 			} catch (Throwable e) {
 				throw new IllegalStateException("failed to roll back container state for container " + container.name(), e);
 			}
+		});
+		if (failure != null)
+			throw failure instanceof RuntimeException r ? r : new IllegalStateException("failed to roll back container state", failure);
+	}
+	
+	/**
+	 * Prepares all given containers for backup. Dependents are prepared before their dependencies, independent containers are prepared in parallel. If any container
+	 * fails to prepare, no further waves are started and the first failure is thrown. Containers that have already been prepared will be rolled back on {@link #close()}.
+	 *
+	 * @param containers        containers to prepare.
+	 * @param predictedDowntime predicted time until the containers will be restored.
+	 */
+	public void prepareAll(List<SalvageContainer> containers, Duration predictedDowntime) throws Throwable {
+		for (var wave : ContainerWaves.stopOrder(containers)) {
+			var failure = runWave(wave, container -> {
+				log.debug("preparing container {} for backup", container.name());
+				prepare(container, predictedDowntime);
+			});
+			if (failure != null)
+				throw failure;
+			
+			// interrupts received while waiting for the wave are only acted upon once all containers of the wave are in a known state
+			if (Thread.currentThread().isInterrupted())
+				throw new InterruptedException("interrupted while preparing containers");
 		}
 	}
 	
-	public void prepare(SalvageContainer container) throws InterruptedException {
+	/**
+	 * Restores all given containers to their state before the backup. Dependencies are restored before their dependents, independent containers are restored in parallel.
+	 * Failures are logged, but don't prevent other containers from being restored.
+	 *
+	 * @param containers containers to restore.
+	 */
+	public void restoreAll(List<SalvageContainer> containers) {
+		runWaves(ContainerWaves.startOrder(containers), container -> {
+			try {
+				log.debug("restoring container {} to previous state", container.name());
+				restore(container);
+			} catch (Throwable e) {
+				log.warn("failed to restore post backup state for container '{}'", container.name(), e);
+			}
+		});
+	}
+	
+	/**
+	 * Runs all waves in order, regardless of failures in previous waves.
+	 *
+	 * @return the first failure, with all further failures added as suppressed exceptions, or {@code null} if all tasks succeeded.
+	 */
+	private Throwable runWaves(List<List<SalvageContainer>> waves, ContainerTask task) {
+		Throwable failure = null;
+		for (var wave : waves) {
+			var waveFailure = runWave(wave, task);
+			if (failure == null)
+				failure = waveFailure;
+			else if (waveFailure != null)
+				failure.addSuppressed(waveFailure);
+		}
+		return failure;
+	}
+	
+	/**
+	 * Runs the given task for all containers of a wave in parallel and waits for all of them to finish. Since we must not lose track of container state, waiting is not
+	 * interruptible and tasks are never cancelled, but the interrupt flag will be restored.
+	 *
+	 * @return the first failure, with all further failures added as suppressed exceptions, or {@code null} if all tasks succeeded.
+	 */
+	private Throwable runWave(List<SalvageContainer> wave, ContainerTask task) {
+		var context = ThreadContext.getImmutableContext();
+		
+		// each task only writes its own slot, joining the scope makes all of them visible
+		var failures = new Throwable[wave.size()];
+		var scope = new TaskScope("StateTransaction");
+		for (int i = 0; i < wave.size(); i++) {
+			var index = i;
+			var container = wave.get(i);
+			scope.fork(() -> {
+				ThreadContext.putAll(context);
+				ThreadContext.put("container", container.name());
+				try {
+					task.run(container);
+				} catch (Throwable e) {
+					failures[index] = e;
+				} finally {
+					ThreadContext.clearMap();
+				}
+			});
+		}
+		scope.join();
+		
+		Throwable failure = null;
+		for (var e : failures) {
+			if (e == null)
+				continue;
+			if (failure == null)
+				failure = e;
+			else
+				failure.addSuppressed(e);
+		}
+		return failure;
+	}
+	
+	/**
+	 * Prepares the given container for backup.
+	 *
+	 * @param container         container to prepare.
+	 * @param predictedDowntime predicted time until the container will be restored, used to check the downtime budget of the container.
+	 */
+	public void prepare(SalvageContainer container, Duration predictedDowntime) throws InterruptedException {
 		var remainingRetries = RETRY_COUNT;
 		
 		InspectContainerResponse inspect;
@@ -71,6 +191,29 @@ public class StateTransaction implements AutoCloseable {
 			throw new IllegalStateException("container '" + container.name() + "' has not reached stable state after " + RETRY_COUNT + " retries");
 		}
 		
+		// if the downtime budget would be exceeded, prefer to only run commands, post commands only run after a pre command, so only those count
+		var action = container.action();
+		var budget = container.maxDowntime();
+		if (action != SalvageContainer.ContainerAction.IGNORE && budget.isPresent() && predictedDowntime.compareTo(budget.get()) > 0) {
+			if (container.commandPre().isPresent()) {
+				log.info("predicted downtime {} of container {} exceeds budget of {}, only running commands", predictedDowntime, container.name(), budget.get());
+				action = SalvageContainer.ContainerAction.IGNORE;
+				tideLog.downtimeBreach(new DowntimeBreach(container, budget.get(), predictedDowntime, DowntimeBreach.Outcome.AVOIDED));
+			} else {
+				log.warn("predicted downtime {} of container {} exceeds budget of {}, but container has no pre command to fall back to", predictedDowntime, container.name(), budget.get());
+				tideLog.downtimeBreach(new DowntimeBreach(container, budget.get(), predictedDowntime, DowntimeBreach.Outcome.PREDICTED));
+			}
+		}
+		
+		// pick action for auto containers based on predicted downtime, paused containers can only be paused
+		Optional<Duration> autoPredicted = Optional.empty();
+		if (action == SalvageContainer.ContainerAction.AUTO) {
+			var pause = state.getPaused() || predictedDowntime.compareTo(container.pauseThreshold()) < 0;
+			action = pause ? SalvageContainer.ContainerAction.PAUSE : SalvageContainer.ContainerAction.STOP;
+			autoPredicted = Optional.of(predictedDowntime);
+			log.info("picked action {} for container {} (predicted downtime: {}, pause threshold: {})", action, container.name(), predictedDowntime, container.pauseThreshold());
+		}
+		
 		// run preperation command if container has one and is running (not paused)
 		boolean preCommandRun = false;
 		if (container.commandPre().isPresent() && state.getRunning() && !state.getPaused()) {
@@ -96,9 +239,10 @@ public class StateTransaction implements AutoCloseable {
 		RestoreFunction restoreFn = (d, c) -> {
 			// default: do nothing
 		};
+		Optional<Instant> alteredAt = Optional.empty();
 		
 		// alter container state, if necessary
-		switch (container.action()) {
+		switch (action) {
 			case IGNORE -> log.debug("container {} has no action, skipping", container.name());
 			case STOP -> {
 				// container must be running and not paused, if it's not running at all, there is no need to stop it (but we must not start it again)
@@ -108,6 +252,7 @@ public class StateTransaction implements AutoCloseable {
 					}
 					log.debug("stopping container {}", container.name());
 					docker.stopContainerCmd(container.id()).exec();
+					alteredAt = Optional.of(Instant.now());
 					
 					restoreFn = (d, c) -> {
 						log.debug("starting container {}", c.name());
@@ -120,6 +265,7 @@ public class StateTransaction implements AutoCloseable {
 				if (state.getRunning() && !state.getPaused()) {
 					log.debug("pausing container {}", container.name());
 					docker.pauseContainerCmd(container.id()).exec();
+					alteredAt = Optional.of(Instant.now());
 					
 					restoreFn = (d, c) -> {
 						log.debug("unpausing container {}", c.name());
@@ -127,16 +273,56 @@ public class StateTransaction implements AutoCloseable {
 					};
 				}
 			}
+			case AUTO -> throw new IllegalStateException("action of container '" + container.name() + "' must be resolved before altering its state");
 		}
 		
 		// add container to tracking list, so we can perform rollback if necessary
-		affectedContainers.put(container, new AffectedContainer(restoreFn, preCommandRun));
+		var pickedAction = action;
+		var autoDecision = autoPredicted.map(predicted -> new AutoDecision(pickedAction, predicted));
+		affectedContainers.put(container, new AffectedContainer(restoreFn, preCommandRun, alteredAt, autoDecision));
+	}
+	
+	/**
+	 * @param containers containers to check.
+	 * @return point in time at which the first of the given containers exceeds its downtime budget, empty if none of them is down with a budget.
+	 */
+	public Optional<Instant> downtimeLimit(List<SalvageContainer> containers) {
+		Optional<Instant> limit = Optional.empty();
+		for (var container : containers) {
+			var affected = affectedContainers.get(container);
+			if (affected == null || affected.alteredAt().isEmpty() || container.maxDowntime().isEmpty())
+				continue;
+			
+			var exceededAt = affected.alteredAt().get().plus(container.maxDowntime().get());
+			if (limit.isEmpty() || exceededAt.isBefore(limit.get()))
+				limit = Optional.of(exceededAt);
+		}
+		return limit;
 	}
 	
 	public void restore(SalvageContainer container) throws Throwable {
 		var affected = affectedContainers.remove(container);
 		affected.restoreFn().run(docker, container);
 		
+		// check actual downtime against budget, now that the container is back up
+		if (affected.alteredAt().isPresent()) {
+			var downtime = Duration.between(affected.alteredAt().get(), Instant.now());
+			log.debug("container {} was down for {}", container.name(), downtime);
+			
+			var budget = container.maxDowntime();
+			if (budget.isPresent() && downtime.compareTo(budget.get()) > 0) {
+				log.warn("container {} was down for {}, exceeding budget of {}", container.name(), downtime, budget.get());
+				tideLog.downtimeBreach(new DowntimeBreach(container, budget.get(), downtime, DowntimeBreach.Outcome.EXCEEDED));
+			}
+			
+			// record outcome of automatic decision, so users can tune pause threshold
+			if (affected.autoDecision().isPresent()) {
+				var decision = affected.autoDecision().get();
+				log.info("container {} was down for {} after auto action picked {} (predicted: {})", container.name(), downtime, decision.action(), decision.predicted());
+				tideLog.actionDecision(new ActionDecision(container, decision.action(), decision.predicted(), container.pauseThreshold(), downtime));
+			}
+		}
+		
 		if (affected.preCommandRun() && container.commandPost().isPresent()) {
 			var command = container.commandPost().get();
 			log.debug("running post command '{}' on container {}", command, container.name());
@@ -155,8 +341,24 @@ public class StateTransaction implements AutoCloseable {
 	 *
 	 * @param restoreFn     the restore function.
 	 * @param preCommandRun whether the preperation command was run, meaning that we also need to run the post command.
+	 * @param alteredAt     when the container was stopped or paused, if its state was altered at all.
+	 * @param autoDecision  the action picked for {@link SalvageContainer.ContainerAction#AUTO} containers.
 	 */
-	private record AffectedContainer(RestoreFunction restoreFn, boolean preCommandRun) {}
+	private record AffectedContainer(RestoreFunction restoreFn, boolean preCommandRun, Optional<Instant> alteredAt, Optional<AutoDecision> autoDecision) {}
+	
+	/**
+	 * @param action    the picked action.
+	 * @param predicted the predicted downtime the decision was based on.
+	 */
+	private record AutoDecision(SalvageContainer.ContainerAction action, Duration predicted) {}
+	
+	/**
+	 * Task that is run for each container of a wave.
+	 */
+	private interface ContainerTask {
+		
+		void run(SalvageContainer container) throws Throwable;
+	}
 	
 	/**
 	 * This interface is responsible for restoring the state of a container after a backup.
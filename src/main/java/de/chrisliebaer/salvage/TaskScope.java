@@ -0,0 +1,109 @@
+package de.chrisliebaer.salvage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Runs tasks on virtual threads whose lifetime is bound to this scope, so no task outlives the code that forked it. Cancelling the scope interrupts all of its tasks,
+ * and closing the scope waits for every task to actually terminate, rather than just marking it as cancelled like {@link java.util.concurrent.Future#cancel(boolean)}.
+ * This is a minimal stand-in for {@code StructuredTaskScope}, which is still a preview API in Java 21.
+ * <p>
+ * Tasks need to translate interrupts into cancellation of whatever they are blocked on, since docker-java swallows interrupts in many places.
+ */
+@Slf4j
+public final class TaskScope implements AutoCloseable {
+	
+	/**
+	 * Interval in which tasks that are still running after cancellation are logged.
+	 */
+	private static final Duration STRAGGLER_LOG_INTERVAL = Duration.ofSeconds(30);
+	
+	private final String name;
+	private final Set<Thread> running = new HashSet<>();
+	private int counter;
+	private boolean cancelled;
+	
+	/**
+	 * @param name Name of the scope, used as prefix for thread names.
+	 */
+	public TaskScope(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Starts the given task on a new virtual thread. Exceptions thrown by the task are logged, since tasks are expected to record their own outcome.
+	 *
+	 * @throws IllegalStateException If the scope has already been cancelled.
+	 */
+	public synchronized void fork(Runnable task) {
+		if (cancelled)
+			throw new IllegalStateException("tried to fork task in scope '" + name + "', but scope has been cancelled");
+		
+		var thread = Thread.ofVirtual().name(name + counter++).unstarted(() -> {
+			try {
+				task.run();
+			} catch (Throwable e) {
+				log.error("fatal uncaught exception in thread {}", Thread.currentThread().getName(), e);
+			} finally {
+				finished(Thread.currentThread());
+			}
+		});
+		running.add(thread);
+		thread.start();
+	}
+	
+	/**
+	 * Interrupts all running tasks and prevents new tasks from being forked. Does not wait for tasks to terminate.
+	 */
+	public synchronized void cancel() {
+		if (!cancelled && !running.isEmpty())
+			log.debug("cancelling {} tasks of scope '{}'", running.size(), name);
+		cancelled = true;
+		running.forEach(Thread::interrupt);
+	}
+	
+	/**
+	 * Waits for all tasks to terminate. Interrupts are deferred until all tasks have terminated, since callers usually must not continue while tasks are still using
+	 * shared resources.
+	 */
+	public synchronized void join() {
+		var interrupted = false;
+		var lastLog = System.nanoTime();
+		while (!running.isEmpty()) {
+			try {
+				wait(STRAGGLER_LOG_INTERVAL.toMillis());
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+			
+			if (cancelled && !running.isEmpty() && System.nanoTime() - lastLog >= STRAGGLER_LOG_INTERVAL.toNanos()) {
+				lastLog = System.nanoTime();
+				log.warn("still waiting for {} cancelled tasks of scope '{}' to terminate", running.size(), name);
+			}
+		}
+		
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	/**
+	 * Cancels all remaining tasks and waits for them to terminate.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (!running.isEmpty())
+				cancel();
+			cancelled = true;
+		}
+		join();
+	}
+	
+	private synchronized void finished(Thread thread) {
+		running.remove(thread);
+		notifyAll();
+	}
+}
@@ -0,0 +1,63 @@
+package de.chrisliebaer.salvage;
+
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import de.chrisliebaer.salvage.planning.VolumeHistory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Measures the size and backing device of volumes using a helper container. Measurements are cached in the volume history and only repeated once they are older than
+ * the configured time-to-live. Measuring happens before any container is stopped, so it doesn't add to downtime.
+ */
+@Slf4j
+public class VolumeProbe {
+	
+	private static final long BYTES_PER_KIB = 1024L;
+	
+	private final HelperContainer helper;
+	private final VolumeHistory history;
+	private final Duration ttl;
+	
+	public VolumeProbe(HelperContainer helper, VolumeHistory history, Duration ttl) {
+		this.helper = helper;
+		this.history = history;
+		this.ttl = ttl;
+	}
+	
+	/**
+	 * Measures all volumes without a recent measurement. Failures are logged and the volume keeps its previous measurement, if any, since measurements only improve scheduling.
+	 *
+	 * @param volumes Volumes to measure.
+	 */
+	public void measure(Collection<SalvageVolume> volumes) throws InterruptedException {
+		var now = Instant.now();
+		for (var volume : volumes) {
+			if (!history.isSizeStale(volume, ttl, now))
+				continue;
+			
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			
+			try {
+				// mountpoint reported by docker is a host path we can't see, but the device number of the mount inside the helper is the same
+				// busybox du does not support byte granularity, kibibytes are precise enough for scheduling
+				var output = helper.run(volume, "sh", "-c", "stat -c %d \"$0\" && du -sk \"$0\"", HelperContainer.FILE_PATH_VOLUME).trim();
+				var lines = output.split("\n");
+				if (lines.length < 2)
+					throw new IllegalStateException("unexpected helper output: " + output);
+				
+				var device = lines[0].trim();
+				var kib = Long.parseLong(lines[1].trim().split("\\s+")[0]);
+				history.recordMeasurement(volume, kib * BYTES_PER_KIB, device, Instant.now());
+				log.debug("measured size of volume '{}' as {} KiB on device {}", volume.name(), kib, device);
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable e) {
+				log.warn("failed to measure size of volume '{}'", volume.name(), e);
+			}
+		}
+	}
+}
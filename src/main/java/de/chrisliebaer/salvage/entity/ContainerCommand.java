@@ -1,9 +1,9 @@
 package de.chrisliebaer.salvage.entity;
 
 import com.github.dockerjava.api.DockerClient;
+import de.chrisliebaer.salvage.reporting.OutputBuffer;
 import lombok.extern.log4j.Log4j2;
 
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 
@@ -30,14 +30,17 @@ public record ContainerCommand(List<String> command, String user) {
 		
 		var exec = execBuilder.exec();
 		
-		// and then run it
+		// and then run it, output is only logged, so there is no need to keep it
+		var output = new OutputBuffer("command in container " + container.name(), 0, line -> {
+			if (log.isTraceEnabled() && line.permitLog())
+				log.trace("[exec] {}", line.toString());
+			return true;
+		});
 		var callback = client.execStartCmd(exec.getId())
 				.withDetach(false) // always stay attached, so we get to know when process exits
-				.exec(new FrameCallback(frame -> {
-					var line = new String(frame.getPayload(), StandardCharsets.UTF_8).trim();
-					log.trace("[exec] {}", line);
-				}));
+				.exec(new FrameCallback(frame -> output.append(frame.getPayload())));
 		callback.join();
+		output.flush();
 		
 		// check exit code
 		var execInspect = client.inspectExecCmd(exec.getId()).exec();
@@ -0,0 +1,113 @@
+package de.chrisliebaer.salvage.entity;
+
+import com.github.dockerjava.api.model.BlkioRateDevice;
+import com.github.dockerjava.api.model.HostConfig;
+import de.chrisliebaer.salvage.SalvageMain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Resource limits applied to every container of a crane, so backups stay within a defined envelope and don't starve containers that keep running during the backup.
+ *
+ * @param cpus           Number of CPUs the crane may use, may be fractional.
+ * @param cpuShares      Relative CPU weight compared to other containers.
+ * @param cpuset         CPUs the crane is allowed to run on, for example {@code 0-1}.
+ * @param memory         Memory limit in bytes.
+ * @param blkioWeight    Relative block I/O weight compared to other containers, between 10 and 1000.
+ * @param deviceReadBps  Read limit in bytes per second, keyed by device path.
+ * @param deviceWriteBps Write limit in bytes per second, keyed by device path.
+ */
+public record CraneResources(Optional<Double> cpus, Optional<Integer> cpuShares, Optional<String> cpuset, Optional<Long> memory, Optional<Integer> blkioWeight,
+							Map<String, Long> deviceReadBps, Map<String, Long> deviceWriteBps) {
+	
+	private static final String LABEL_RESOURCES = ".resources";
+	private static final String LABEL_CPUS = LABEL_RESOURCES + ".cpus";
+	private static final String LABEL_CPU_SHARES = LABEL_RESOURCES + ".cpuShares";
+	private static final String LABEL_CPUSET = LABEL_RESOURCES + ".cpuset";
+	private static final String LABEL_MEMORY = LABEL_RESOURCES + ".memory";
+	private static final String LABEL_BLKIO_WEIGHT = LABEL_RESOURCES + ".blkioWeight";
+	private static final String LABEL_DEVICE_READ_BPS = LABEL_RESOURCES + ".deviceReadBps.";
+	private static final String LABEL_DEVICE_WRITE_BPS = LABEL_RESOURCES + ".deviceWriteBps.";
+	
+	private static final long NANO_CPUS_PER_CPU = 1_000_000_000L;
+	private static final int BLKIO_WEIGHT_MIN = 10;
+	private static final int BLKIO_WEIGHT_MAX = 1000;
+	private static final int CPU_SHARES_MIN = 2;
+	
+	public static CraneResources fromLabels(String name, String prefix, Map<String, String> labels) {
+		var cpus = parseNumber(name, labels.get(prefix + LABEL_CPUS), "cpus", Double::parseDouble);
+		if (cpus.isPresent() && !(cpus.get() > 0))
+			throw new IllegalArgumentException("tried to construct crane '" + name + "', but cpus is not positive: " + cpus.get());
+		
+		var cpuShares = parseNumber(name, labels.get(prefix + LABEL_CPU_SHARES), "cpuShares", Integer::parseInt);
+		if (cpuShares.isPresent() && cpuShares.get() < CPU_SHARES_MIN)
+			throw new IllegalArgumentException("tried to construct crane '" + name + "', but cpuShares is below " + CPU_SHARES_MIN);
+		
+		var cpuset = Optional.ofNullable(labels.get(prefix + LABEL_CPUSET));
+		var memory = Optional.ofNullable(labels.get(prefix + LABEL_MEMORY)).map(SalvageMain::parseSize);
+		
+		var blkioWeight = parseNumber(name, labels.get(prefix + LABEL_BLKIO_WEIGHT), "blkioWeight", Integer::parseInt);
+		if (blkioWeight.isPresent() && (blkioWeight.get() < BLKIO_WEIGHT_MIN || blkioWeight.get() > BLKIO_WEIGHT_MAX))
+			throw new IllegalArgumentException("tried to construct crane '" + name + "', but blkioWeight is outside of " + BLKIO_WEIGHT_MIN + "-" + BLKIO_WEIGHT_MAX);
+		
+		var deviceReadBps = new HashMap<String, Long>();
+		var deviceWriteBps = new HashMap<String, Long>();
+		for (var entry : labels.entrySet()) {
+			var key = entry.getKey();
+			if (key.startsWith(prefix + LABEL_DEVICE_READ_BPS))
+				deviceReadBps.put(key.substring(prefix.length() + LABEL_DEVICE_READ_BPS.length()), SalvageMain.parseSize(entry.getValue()));
+			else if (key.startsWith(prefix + LABEL_DEVICE_WRITE_BPS))
+				deviceWriteBps.put(key.substring(prefix.length() + LABEL_DEVICE_WRITE_BPS.length()), SalvageMain.parseSize(entry.getValue()));
+		}
+		
+		return new CraneResources(cpus, cpuShares, cpuset, memory, blkioWeight, deviceReadBps, deviceWriteBps);
+	}
+	
+	private static <T> Optional<T> parseNumber(String name, String value, String field, Function<String, T> parser) {
+		if (value == null)
+			return Optional.empty();
+		try {
+			return Optional.of(parser.apply(value.strip()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("tried to construct crane '" + name + "', but " + field + " is not a number", e);
+		}
+	}
+	
+	/**
+	 * Applies all configured limits to the given host config.
+	 *
+	 * @param hostConfig Host config of a crane container.
+	 * @return The same host config, for chaining.
+	 */
+	public HostConfig apply(HostConfig hostConfig) {
+		cpus.ifPresent(c -> hostConfig.withNanoCPUs(Math.round(c * NANO_CPUS_PER_CPU)));
+		cpuShares.ifPresent(hostConfig::withCpuShares);
+		cpuset.ifPresent(hostConfig::withCpusetCpus);
+		memory.ifPresent(hostConfig::withMemory);
+		blkioWeight.ifPresent(hostConfig::withBlkioWeight);
+		if (!deviceReadBps.isEmpty())
+			hostConfig.withBlkioDeviceReadBps(rateDevices(deviceReadBps));
+		if (!deviceWriteBps.isEmpty())
+			hostConfig.withBlkioDeviceWriteBps(rateDevices(deviceWriteBps));
+		return hostConfig;
+	}
+	
+	/**
+	 * @return Same limits, but with the lowest possible CPU and block I/O weight, so the crane only uses resources other containers leave unused.
+	 */
+	public CraneResources throttled() {
+		return new CraneResources(cpus, Optional.of(CPU_SHARES_MIN), cpuset, memory, Optional.of(BLKIO_WEIGHT_MIN), deviceReadBps, deviceWriteBps);
+	}
+	
+	private static List<BlkioRateDevice> rateDevices(Map<String, Long> rates) {
+		var devices = new ArrayList<BlkioRateDevice>(rates.size());
+		for (var entry : rates.entrySet())
+			devices.add(new BlkioRateDevice().withPath(entry.getKey()).withRate(entry.getValue()));
+		return devices;
+	}
+}
@@ -5,7 +5,10 @@ import com.github.dockerjava.api.model.Frame;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -18,6 +21,7 @@ public class FrameCallback implements ResultCallback<Frame> {
 	
 	private Closeable closeable;
 	private volatile Throwable error;
+	private volatile Instant lastFrame = Instant.now();
 	
 	public FrameCallback(Consumer<Frame> consumer) {
 		this.consumer = consumer;
@@ -30,6 +34,7 @@ public class FrameCallback implements ResultCallback<Frame> {
 	
 	@Override
 	public void onNext(Frame frame) {
+		lastFrame = Instant.now();
 		consumer.accept(frame);
 	}
 	
@@ -56,4 +61,27 @@ public class FrameCallback implements ResultCallback<Frame> {
 			throw error;
 		}
 	}
+	
+	/**
+	 * Waits for the execution to finish, but at most for the given timeout.
+	 *
+	 * @param timeout Maximum time to wait.
+	 * @return {@code true} if the execution has finished, {@code false} if the timeout elapsed first.
+	 */
+	public boolean join(Duration timeout) throws Throwable {
+		if (!countDownLatch.await(Math.max(timeout.toMillis(), 0), TimeUnit.MILLISECONDS))
+			return false;
+		
+		if (error != null) {
+			throw error;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return Time at which the last frame has been received, or the time of creation if no frame has been received yet.
+	 */
+	public Instant lastFrame() {
+		return lastFrame;
+	}
 }
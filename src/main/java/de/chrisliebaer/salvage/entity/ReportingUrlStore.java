@@ -6,7 +6,8 @@ import java.util.Map;
 import java.util.Optional;
 
 
-public record ReportingUrlStore(Optional<URI> tideSuccess, Optional<URI> tideFailure, Optional<URI> volumeSuccess, Optional<URI> volumeFailure, Method method) {
+public record ReportingUrlStore(Optional<URI> tideSuccess, Optional<URI> tideFailure, Optional<URI> volumeSuccess, Optional<URI> volumeFailure,
+								Optional<URI> volumeSkipped, Optional<URI> downtimeBreach, Method method) {
 	
 	public enum Method {
 		POST, GET
@@ -16,6 +17,8 @@ public record ReportingUrlStore(Optional<URI> tideSuccess, Optional<URI> tideFai
 	private static final String LABEL_TIDE_REPORT_TIDE_FAILURE_SUFFIX = ".tide.failure";
 	private static final String LABEL_TIDE_REPORT_VOLUME_SUCCESS_SUFFIX = ".volume.success";
 	private static final String LABEL_TIDE_REPORT_VOLUME_FAILURE_SUFFIX = ".volume.failure";
+	private static final String LABEL_TIDE_REPORT_VOLUME_SKIPPED_SUFFIX = ".volume.skipped";
+	private static final String LABEL_TIDE_REPORT_DOWNTIME_BREACH_SUFFIX = ".downtime.breach";
 	private static final String LABEL_TIDE_REPORT_METHOD = ".method";
 	
 	public static ReportingUrlStore fromEnv(Map<String, String> labels, String prefix) throws URISyntaxException {
@@ -23,13 +26,15 @@ public record ReportingUrlStore(Optional<URI> tideSuccess, Optional<URI> tideFai
 		var tideFailure = parse(labels.get(prefix + LABEL_TIDE_REPORT_TIDE_FAILURE_SUFFIX));
 		var volumeSuccess = parse(labels.get(prefix + LABEL_TIDE_REPORT_VOLUME_SUCCESS_SUFFIX));
 		var volumeFailure = parse(labels.get(prefix + LABEL_TIDE_REPORT_VOLUME_FAILURE_SUFFIX));
+		var volumeSkipped = parse(labels.get(prefix + LABEL_TIDE_REPORT_VOLUME_SKIPPED_SUFFIX));
+		var downtimeBreach = parse(labels.get(prefix + LABEL_TIDE_REPORT_DOWNTIME_BREACH_SUFFIX));
 		
 		var method = Optional.ofNullable(labels.get(prefix + LABEL_TIDE_REPORT_METHOD))
 				.map(String::toUpperCase)
 				.map(Method::valueOf)
 				.orElse(Method.POST);
 		
-		return new ReportingUrlStore(tideSuccess, tideFailure, volumeSuccess, volumeFailure, method);
+		return new ReportingUrlStore(tideSuccess, tideFailure, volumeSuccess, volumeFailure, volumeSkipped, downtimeBreach, method);
 	}
 	
 	private static Optional<URI> parse(String url) throws URISyntaxException {
@@ -0,0 +1,82 @@
+package de.chrisliebaer.salvage.entity;
+
+import de.chrisliebaer.salvage.SalvageMain;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Decides whether a failed backup is attempted again within the same tide. Retries are queued behind all other volumes of the group, so transient failures such as a
+ * locked repository don't cost a whole additional stop and start cycle.
+ *
+ * @param attempts  Maximum number of attempts per volume, including the first one.
+ * @param backoff   Delay before the first retry, doubled for every further retry.
+ * @param exitCodes Exit codes of the crane considered transient. If empty, every failure is retried.
+ */
+public record RetryPolicy(int attempts, Duration backoff, Set<Integer> exitCodes) {
+	
+	private static final String LABEL_RETRY = ".retry";
+	private static final String LABEL_ATTEMPTS = LABEL_RETRY + ".attempts";
+	private static final String LABEL_BACKOFF = LABEL_RETRY + ".backoff";
+	private static final String LABEL_EXIT_CODES = LABEL_RETRY + ".exitCodes";
+	
+	private static final Duration DEFAULT_BACKOFF = Duration.ofSeconds(30);
+	
+	/**
+	 * Backoff stops growing after this many retries, which is plenty for any sensible number of attempts.
+	 */
+	private static final int MAX_DOUBLINGS = 16;
+	
+	public static RetryPolicy fromLabels(String name, String prefix, Map<String, String> labels) {
+		var attempts = 1;
+		if (labels.containsKey(prefix + LABEL_ATTEMPTS)) {
+			try {
+				attempts = Integer.parseInt(labels.get(prefix + LABEL_ATTEMPTS));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("tried to construct crane '" + name + "', but retry attempts is not a number", e);
+			}
+			if (attempts < 1)
+				throw new IllegalArgumentException("tried to construct crane '" + name + "', but retry attempts is " + attempts);
+		}
+		
+		var backoff = Optional.ofNullable(labels.get(prefix + LABEL_BACKOFF)).map(SalvageMain::parseDuration).orElse(DEFAULT_BACKOFF);
+		
+		var exitCodes = new HashSet<Integer>();
+		var exitCodesLabel = labels.get(prefix + LABEL_EXIT_CODES);
+		if (exitCodesLabel != null) {
+			for (var code : exitCodesLabel.split(",")) {
+				if (code.isBlank())
+					continue;
+				try {
+					exitCodes.add(Integer.parseInt(code.trim()));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("tried to construct crane '" + name + "', but retry exit code '" + code.trim() + "' is not a number", e);
+				}
+			}
+		}
+		
+		return new RetryPolicy(attempts, backoff, Set.copyOf(exitCodes));
+	}
+	
+	/**
+	 * @param attempt  Number of attempts made so far.
+	 * @param exitCode Exit code of the failed attempt, empty if the crane didn't exit on its own.
+	 * @return {@code true} if the volume should be attempted again.
+	 */
+	public boolean shouldRetry(int attempt, Optional<Integer> exitCode) {
+		if (attempt >= attempts)
+			return false;
+		return exitCodes.isEmpty() || exitCode.map(exitCodes::contains).orElse(false);
+	}
+	
+	/**
+	 * @param attempt Number of attempts made so far.
+	 * @return Delay before the next attempt.
+	 */
+	public Duration backoff(int attempt) {
+		return backoff.multipliedBy(1L << Math.min(attempt - 1, MAX_DOUBLINGS));
+	}
+}
@@ -1,20 +1,47 @@
 package de.chrisliebaer.salvage.entity;
 
 import com.github.dockerjava.api.command.InspectContainerResponse;
+import de.chrisliebaer.salvage.SalvageMain;
+import de.chrisliebaer.salvage.planning.VolumeHistory;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 
 @Slf4j
-public record SalvageConfiguration(String hostname, String ownContainerId, List<SalvageTide> tides, HashMap<String, SalvageCrane> cranes) {
+public record SalvageConfiguration(String hostname, String ownContainerId, List<SalvageTide> tides, HashMap<String, SalvageCrane> cranes,
+								   boolean dryRun, Optional<Path> historyFile, Duration assumedDuration, String helperImage, Duration sizeCacheTtl,
+								   Optional<Path> pressurePath, double pressureThreshold, Duration pressureInterval,
+								   int maxConcurrentPerDevice, Optional<RestoreRequest> restore) {
 	
 	private static final String ENV_HOSTNAME = "MACHINE";
+	private static final String ENV_DRY_RUN = "DRY_RUN";
+	private static final String ENV_HISTORY_FILE = "HISTORY_FILE";
+	private static final String ENV_ASSUMED_DURATION = "ASSUMED_DURATION";
+	private static final String ENV_HELPER_IMAGE = "HELPER_IMAGE";
+	private static final String ENV_SIZE_CACHE_TTL = "SIZE_CACHE_TTL";
+	private static final String ENV_PRESSURE_PATH = "PRESSURE_PATH";
+	private static final String ENV_PRESSURE_THRESHOLD = "PRESSURE_THRESHOLD";
+	private static final String ENV_PRESSURE_INTERVAL = "PRESSURE_INTERVAL";
+	private static final String ENV_RESTORE = "RESTORE";
+	private static final String ENV_RESTORE_CRANE = "RESTORE_CRANE";
+	private static final String ENV_RESTORE_TIMESTAMP = "RESTORE_TIMESTAMP";
+	
+	private static final String DEFAULT_HELPER_IMAGE = "busybox:stable";
+	private static final Duration DEFAULT_SIZE_CACHE_TTL = Duration.ofDays(1);
+	private static final double DEFAULT_PRESSURE_THRESHOLD = 10.0;
+	private static final Duration DEFAULT_PRESSURE_INTERVAL = Duration.ofSeconds(10);
 	
 	private static final String LABEL_SALVAGE_TIDE_PREFIX = "salvage.tides.";
 	private static final String LABEL_SALVAGE_CRANE_PREFIX = "salvage.cranes.";
+	private static final String LABEL_SALVAGE_DEVICES_MAX_CONCURRENT = "salvage.devices.maxConcurrent";
 	
 	public static SalvageConfiguration fromContainerInspect(InspectContainerResponse container) {
 		var labels = container.getConfig().getLabels();
@@ -25,6 +52,44 @@ public record SalvageConfiguration(String hostname, String ownContainerId, List<
 			throw new IllegalArgumentException("tried to construct configuration, but no hostname was specified");
 		}
 		
+		var dryRun = parseBoolean(System.getenv(ENV_DRY_RUN));
+		var historyFile = Optional.ofNullable(System.getenv(ENV_HISTORY_FILE)).filter(s -> !s.isBlank()).map(Path::of);
+		var assumedDuration = Optional.ofNullable(System.getenv(ENV_ASSUMED_DURATION))
+				.map(SalvageMain::parseDuration)
+				.orElse(VolumeHistory.DEFAULT_ESTIMATE);
+		var helperImage = Optional.ofNullable(System.getenv(ENV_HELPER_IMAGE)).filter(s -> !s.isBlank()).orElse(DEFAULT_HELPER_IMAGE);
+		var sizeCacheTtl = Optional.ofNullable(System.getenv(ENV_SIZE_CACHE_TTL))
+				.map(SalvageMain::parseDuration)
+				.orElse(DEFAULT_SIZE_CACHE_TTL);
+		var pressurePath = Optional.ofNullable(System.getenv(ENV_PRESSURE_PATH)).filter(s -> !s.isBlank()).map(Path::of);
+		var pressureThreshold = DEFAULT_PRESSURE_THRESHOLD;
+		var pressureThresholdEnv = System.getenv(ENV_PRESSURE_THRESHOLD);
+		if (pressureThresholdEnv != null) {
+			try {
+				pressureThreshold = Double.parseDouble(pressureThresholdEnv);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("tried to construct configuration, but pressure threshold is not a number", e);
+			}
+			if (!(pressureThreshold > 0))
+				throw new IllegalArgumentException("tried to construct configuration, but pressure threshold is not positive");
+		}
+		var pressureInterval = Optional.ofNullable(System.getenv(ENV_PRESSURE_INTERVAL))
+				.map(SalvageMain::parseDuration)
+				.orElse(DEFAULT_PRESSURE_INTERVAL);
+		if (pressureInterval.isZero() || pressureInterval.isNegative())
+			throw new IllegalArgumentException("tried to construct configuration, but pressure interval is not positive");
+		
+		var maxConcurrentPerDevice = Integer.MAX_VALUE;
+		if (labels.containsKey(LABEL_SALVAGE_DEVICES_MAX_CONCURRENT)) {
+			try {
+				maxConcurrentPerDevice = Integer.parseInt(labels.get(LABEL_SALVAGE_DEVICES_MAX_CONCURRENT));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("tried to construct configuration, but maxConcurrent per device is not a number", e);
+			}
+			if (maxConcurrentPerDevice < 1)
+				throw new IllegalArgumentException("tried to construct configuration, but maxConcurrent per device is " + maxConcurrentPerDevice);
+		}
+		
 		// index labels
 		var tideNames = new HashSet<String>();
 		var craneNames = new HashSet<String>();
@@ -56,10 +121,65 @@ public record SalvageConfiguration(String hostname, String ownContainerId, List<
 			log.debug("loaded tide '{}'", tide);
 		}
 		
-		if (tides.isEmpty()) {
+		var restore = parseRestore(cranes);
+		
+		// restores don't execute any tide, so a host that is being rebuilt only needs its cranes
+		if (tides.isEmpty() && restore.isEmpty()) {
 			throw new IllegalArgumentException("tried to construct configuration, but no tides were specified");
 		}
 		
-		return new SalvageConfiguration(hostname, container.getId(), tides, cranes);
+		return new SalvageConfiguration(hostname, container.getId(), tides, cranes, dryRun, historyFile, assumedDuration, helperImage, sizeCacheTtl,
+				pressurePath, pressureThreshold, pressureInterval, maxConcurrentPerDevice, restore);
+	}
+	
+	private static Optional<RestoreRequest> parseRestore(HashMap<String, SalvageCrane> cranes) {
+		var volumes = Optional.ofNullable(System.getenv(ENV_RESTORE)).stream()
+				.flatMap(s -> Arrays.stream(s.split(",")))
+				.map(String::strip)
+				.filter(s -> !s.isEmpty())
+				.distinct()
+				.toList();
+		if (volumes.isEmpty())
+			return Optional.empty();
+		
+		SalvageCrane crane;
+		var craneName = Optional.ofNullable(System.getenv(ENV_RESTORE_CRANE)).map(String::strip).filter(s -> !s.isEmpty());
+		if (craneName.isPresent()) {
+			crane = cranes.get(craneName.get());
+			if (crane == null)
+				throw new IllegalArgumentException("tried to construct configuration, but restore requested unknown crane '" + craneName.get() + "'");
+		} else if (cranes.size() == 1) {
+			crane = cranes.values().iterator().next();
+		} else {
+			throw new IllegalArgumentException("tried to construct configuration, but restore requires " + ENV_RESTORE_CRANE + " unless exactly one crane is configured");
+		}
+		
+		Optional<Long> timestamp;
+		try {
+			timestamp = Optional.ofNullable(System.getenv(ENV_RESTORE_TIMESTAMP)).map(String::strip).filter(s -> !s.isEmpty()).map(Long::parseLong);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("tried to construct configuration, but restore timestamp is not a number", e);
+		}
+		
+		return Optional.of(new RestoreRequest(volumes, crane, timestamp));
+	}
+	
+	/**
+	 * Volumes to restore instead of executing tides.
+	 *
+	 * @param volumes   Names of the volumes to restore.
+	 * @param crane     Crane that backed up the volumes.
+	 * @param timestamp Tide timestamp of the backup to restore, in seconds since epoch, empty for the latest backup.
+	 */
+	public record RestoreRequest(List<String> volumes, SalvageCrane crane, Optional<Long> timestamp) {}
+	
+	private static boolean parseBoolean(String value) {
+		if (value == null)
+			return false;
+		
+		return switch (value.toLowerCase(Locale.ROOT)) {
+			case "true", "1", "yes" -> true;
+			default -> false;
+		};
 	}
 }
@@ -1,25 +1,39 @@
 package de.chrisliebaer.salvage.entity;
 
 import com.github.dockerjava.api.command.InspectContainerResponse;
+import de.chrisliebaer.salvage.SalvageMain;
 import de.chrisliebaer.salvage.SalvageService;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
-public record SalvageContainer(String id, String name, Optional<String> project, List<SalvageVolume> volumes,
+public record SalvageContainer(String id, String name, Optional<String> project, Optional<String> service, Set<String> dependsOn, List<SalvageVolume> volumes,
 							   ContainerAction action, Optional<ContainerCommand> commandPre, Optional<ContainerCommand> commandPost,
-							   ExitCodeBehaviour exitCodeBehaviour) {
+							   ExitCodeBehaviour exitCodeBehaviour, Optional<Duration> maxDowntime, Duration pauseThreshold) {
+	
+	private static final String COMPOSE_LABEL_SERVICE = "com.docker.compose.service";
+	private static final String COMPOSE_LABEL_DEPENDS_ON = "com.docker.compose.depends_on";
 	
 	private static final String LABEL_CONTAINER_ACTION = "salvage.action";
+	private static final String LABEL_CONTAINER_ACTION_PAUSE_THRESHOLD = "salvage.action.pauseThreshold";
+	private static final String LABEL_CONTAINER_MAX_DOWNTIME = "salvage.maxDowntime";
 	
 	private static final String LABEL_CONTAINER_COMMAND_EXIT_CODE = "salvage.command.exitcode";
 	private static final String LABEL_CONTAINER_COMMAND_USER = "salvage.command.user";
 	private static final String LABEL_CONTAINER_COMMAND_PRE = "salvage.command.pre";
 	private static final String LABEL_CONTAINER_COMMAND_POST = "salvage.command.post";
 	
+	/**
+	 * Containers with {@link ContainerAction#AUTO} will be paused if their predicted downtime is below this threshold, unless configured otherwise.
+	 */
+	private static final Duration DEFAULT_PAUSE_THRESHOLD = Duration.ofMinutes(1);
+	
 	/**
 	 * Describes the action to be performed on the container in preparation for the backup.
 	 */
@@ -37,13 +51,20 @@ public record SalvageContainer(String id, String name, Optional<String> project,
 		/**
 		 * Pause container during backup.
 		 */
-		PAUSE;
+		PAUSE,
+		
+		/**
+		 * Pause container if the predicted backup duration is short, stop it otherwise. Pausing keeps caches warm and avoids a cold start, while stopping is preferred for
+		 * long backups.
+		 */
+		AUTO;
 		
 		public static ContainerAction fromString(String action) {
 			return switch (action) {
 				case "ignore" -> IGNORE;
 				case "stop" -> STOP;
 				case "pause" -> PAUSE;
+				case "auto" -> AUTO;
 				default -> throw new IllegalArgumentException("Unknown container action: " + action);
 			};
 		}
@@ -56,6 +77,18 @@ public record SalvageContainer(String id, String name, Optional<String> project,
 		
 		// container might be part of compose project
 		var project = Optional.ofNullable(labels.get(SalvageService.COMPOSE_LABEL_PROJECT));
+		var service = Optional.ofNullable(labels.get(COMPOSE_LABEL_SERVICE));
+		
+		// compose lists dependencies as "service:condition:restart", we only need the service name
+		var dependsOn = new HashSet<String>();
+		var dependsOnLabel = labels.get(COMPOSE_LABEL_DEPENDS_ON);
+		if (dependsOnLabel != null) {
+			for (var dependency : dependsOnLabel.split(",")) {
+				var dependencyService = dependency.split(":", 2)[0].strip();
+				if (!dependencyService.isEmpty())
+					dependsOn.add(dependencyService);
+			}
+		}
 		
 		// parse user or fall back to container user
 		var user = labels.getOrDefault(LABEL_CONTAINER_COMMAND_USER, container.getConfig().getUser());
@@ -76,6 +109,12 @@ public record SalvageContainer(String id, String name, Optional<String> project,
 		// parse action override, if present
 		action = Optional.ofNullable(labels.get(LABEL_CONTAINER_ACTION)).map(ContainerAction::fromString).orElse(action);
 		
+		// downtime budget is optional and only relevant for actions that alter container state
+		var maxDowntime = Optional.ofNullable(labels.get(LABEL_CONTAINER_MAX_DOWNTIME)).map(SalvageMain::parseDuration);
+		var pauseThreshold = Optional.ofNullable(labels.get(LABEL_CONTAINER_ACTION_PAUSE_THRESHOLD))
+				.map(SalvageMain::parseDuration)
+				.orElse(DEFAULT_PAUSE_THRESHOLD);
+		
 		// note: not all used volumes might be part of tide
 		for (var mount : container.getMounts()) {
 			var volume = volumes.get(mount.getName());
@@ -83,7 +122,17 @@ public record SalvageContainer(String id, String name, Optional<String> project,
 				usedVolumes.add(volume);
 		}
 		
-		return new SalvageContainer(container.getId(), container.getName(), project, usedVolumes, action, preCommand, postCommand, exitCodeBehaviour);
+		return new SalvageContainer(container.getId(), container.getName(), project, service, Set.copyOf(dependsOn), usedVolumes,
+				action, preCommand, postCommand, exitCodeBehaviour, maxDowntime, pauseThreshold);
+	}
+	
+	/**
+	 * @param volumes Volumes of the tide the container depends on.
+	 * @return Copy of this container, only depending on the given volumes.
+	 */
+	public SalvageContainer withVolumes(List<SalvageVolume> volumes) {
+		return new SalvageContainer(id, name, project, service, dependsOn, List.copyOf(volumes), action, commandPre, commandPost, exitCodeBehaviour, maxDowntime,
+				pauseThreshold);
 	}
 	
 	private static String[] translateCommandline(String command) {
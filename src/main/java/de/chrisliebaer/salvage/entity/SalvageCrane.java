@@ -1,15 +1,24 @@
 package de.chrisliebaer.salvage.entity;
 
+import de.chrisliebaer.salvage.SalvageMain;
+
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
-public record SalvageCrane(String name, String image, boolean pullOnRun, Map<String, String> env, Map<String, String> mounts, int maxConcurrent) {
+public record SalvageCrane(String name, String image, boolean pullOnRun, Map<String, String> env, Map<String, String> mounts, int maxConcurrent,
+						   int batchSize, Optional<Duration> timeout, Optional<Duration> stallTimeout,
+						   CraneResources resources, RetryPolicy retry) {
 	
 	private static final String LABEL_SALVAGE_IMAGE_SUFFIX = ".image";
 	private static final String LABEL_PULL_ON_RUN = ".pullOnRun";
 	private static final String LABEL_SALVAGE_ENV = ".env.";
 	private static final String LABEL_SALVAGE_MOUNT = ".mount.";
 	private static final String LABEL_SALVAGE_MAX_CONCURRENT = ".maxConcurrent";
+	private static final String LABEL_SALVAGE_BATCH = ".batch";
+	private static final String LABEL_SALVAGE_TIMEOUT = ".timeout";
+	private static final String LABEL_SALVAGE_STALL_TIMEOUT = ".stallTimeout";
 	
 	public static SalvageCrane fromLabels(String name, String prefix, Map<String, String> labels) {
 		var image = labels.get(prefix + LABEL_SALVAGE_IMAGE_SUFFIX);
@@ -38,6 +47,31 @@ public record SalvageCrane(String name, String image, boolean pullOnRun, Map<Str
 		try {
 			maxConcurrent = Integer.parseInt(labels.get(prefix + LABEL_SALVAGE_MAX_CONCURRENT));
 		} catch (NumberFormatException ignore) {}
-		return new SalvageCrane(name, image, pullOnRun, env, mounts, maxConcurrent);
+		
+		// cranes need to explicitly support the batch layout, so it's opt-in
+		var batchSize = 1;
+		if (labels.containsKey(prefix + LABEL_SALVAGE_BATCH)) {
+			try {
+				batchSize = Integer.parseInt(labels.get(prefix + LABEL_SALVAGE_BATCH));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("tried to construct crane '" + name + "', but batch size is not a number", e);
+			}
+			if (batchSize < 1)
+				throw new IllegalArgumentException("tried to construct crane '" + name + "', but batch size is " + batchSize);
+		}
+		
+		var timeout = Optional.ofNullable(labels.get(prefix + LABEL_SALVAGE_TIMEOUT)).map(SalvageMain::parseDuration);
+		var stallTimeout = Optional.ofNullable(labels.get(prefix + LABEL_SALVAGE_STALL_TIMEOUT)).map(SalvageMain::parseDuration);
+		
+		var resources = CraneResources.fromLabels(name, prefix, labels);
+		var retry = RetryPolicy.fromLabels(name, prefix, labels);
+		return new SalvageCrane(name, image, pullOnRun, env, mounts, maxConcurrent, batchSize, timeout, stallTimeout, resources, retry);
+	}
+	
+	/**
+	 * @return {@code true} if this crane backs up multiple volumes per container, using the batch layout.
+	 */
+	public boolean batched() {
+		return batchSize > 1;
 	}
 }
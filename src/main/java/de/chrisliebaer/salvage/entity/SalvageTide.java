@@ -5,27 +5,63 @@ import com.cronutils.model.CronType;
 import com.cronutils.model.definition.CronDefinitionBuilder;
 import com.cronutils.model.time.ExecutionTime;
 import com.cronutils.parser.CronParser;
+import de.chrisliebaer.salvage.SalvageMain;
 
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * A tide defines a common set of volumes that will be backed up at the same time. This allows salvage to minimize container downtime by shutting down containers only
  * once and backup the entire application. It also allows to coordinate backups on a system level, rather than a compose project level.
  *
  * @param name              Name of the tide.
- * @param crane             Crane that will be used to back up the tide.
+ * @param type              Whether this tide backs up volumes or verifies their latest backups.
+ * @param cranes            Cranes that will be used to back up each volume of the tide, all of them while containers are down only once.
+ * @param craneMode         Controls whether the cranes of a volume run at the same time or one after another.
  * @param groupingMode      Grouping controls how the volumes of this tide are grouped. The volumes of each group will be backed up at the same time.
+ * @param groupingBounds    Limits the size of groups, only used by {@link GroupingMode#BOUNDED}.
  * @param cron              Cron expression that defines the time when this tide will be executed.
  * @param maxConcurrent     Maximum number of backups that will be executed at the same time, regardless of crane capacities.
+ * @param timeout           Maximum duration of the entire tide. Once exceeded, running cranes are killed and remaining volumes are skipped.
+ * @param snapshot          Copy volumes into staging volumes while containers are down and back up the copies after containers have been restored.
+ * @param skipUnchanged     Skip volumes that haven't changed since their last successful backup, without stopping any container.
+ * @param unchangedMaxAge   Maximum age of the last successful backup, after which volumes are backed up even if they haven't changed.
  * @param reportingUrlStore Stores URLs for backup reporting for this particular tide.
  */
-public record SalvageTide(String name, SalvageCrane crane, GroupingMode groupingMode, Cron cron, int maxConcurrent, ReportingUrlStore reportingUrlStore) {
+public record SalvageTide(String name, TideType type, List<SalvageCrane> cranes, CraneMode craneMode, GroupingMode groupingMode, GroupingBounds groupingBounds, Cron cron, int maxConcurrent,
+						  Optional<Duration> timeout, boolean snapshot, boolean skipUnchanged, Optional<Duration> unchangedMaxAge, ReportingUrlStore reportingUrlStore) {
 	
 	private static final CronParser UNIX_CRONTAB_PARSER = new CronParser(CronDefinitionBuilder.instanceDefinitionFor(CronType.UNIX));
 	
+	/**
+	 * Controls what a tide does with its volumes.
+	 */
+	public enum TideType {
+		/**
+		 * Back up volumes, stopping containers as configured.
+		 */
+		BACKUP,
+		/**
+		 * Run the verification of each crane against the latest backup of each volume. Containers and volumes are not touched, cranes run with throttled resources
+		 * and stop once a backup tide is due.
+		 */
+		VERIFY;
+		
+		public static TideType fromString(String value) {
+			return switch (value) {
+				case "backup" -> BACKUP;
+				case "verify" -> VERIFY;
+				default -> throw new IllegalArgumentException("Unknown tide type: " + value);
+			};
+		}
+	}
+	
 	/**
 	 * Controlls granularity of backup operations
 	 */
@@ -42,22 +78,115 @@ public record SalvageTide(String name, SalvageCrane crane, GroupingMode grouping
 		/**
 		 * Same as smart, but don't split backup sets of compose projects. Sacrifices uptime of single compose services but reduces downtime of entire compose project.
 		 */
-		PROJECT;
+		PROJECT,
+		/**
+		 * Same as smart, but groups exceeding the configured {@link GroupingBounds} are split into smaller groups. Containers using volumes of multiple split groups are
+		 * stopped and started once for every group they are part of. Groups are only split if the predicted downtime of all affected containers is lower than before.
+		 */
+		BOUNDED;
 		
 		public static GroupingMode fromString(String value) {
 			return switch (value) {
 				case "individual" -> INDIVIDUAL;
 				case "smart" -> SMART;
 				case "project" -> PROJECT;
+				case "bounded" -> BOUNDED;
 				default -> throw new IllegalArgumentException("Unknown grouping mode: " + value);
 			};
 		}
 	}
 	
+	/**
+	 * Controls how a volume is backed up by multiple cranes.
+	 */
+	public enum CraneMode {
+		/**
+		 * Run all cranes of a volume at the same time, keeping downtime short at the cost of reading the volume multiple times concurrently.
+		 */
+		PARALLEL,
+		/**
+		 * Run the cranes of a volume one after another in the configured order, so the volume is only read by a single crane at a time.
+		 */
+		SEQUENTIAL;
+		
+		public static CraneMode fromString(String value) {
+			return switch (value) {
+				case "parallel" -> PARALLEL;
+				case "sequential" -> SEQUENTIAL;
+				default -> throw new IllegalArgumentException("Unknown crane mode: " + value);
+			};
+		}
+	}
+	
 	private static final String LABEL_TIDE_CRON_SUFFIX = ".cron";
+	private static final String LABEL_TIDE_TYPE_SUFFIX = ".type";
 	private static final String LABEL_TIDE_GROUPING_SUFFIX = ".grouping";
 	private static final String LABEL_TIDE_CRANE_SUFFIX = ".crane";
+	private static final String LABEL_TIDE_CRANE_MODE_SUFFIX = ".craneMode";
 	private static final String LABEL_TIDE_MAX_CONCURRENT_SUFFIX = ".maxConcurrent";
+	private static final String LABEL_TIDE_TIMEOUT_SUFFIX = ".timeout";
+	private static final String LABEL_TIDE_SNAPSHOT_SUFFIX = ".snapshot";
+	private static final String LABEL_TIDE_SKIP_UNCHANGED_SUFFIX = ".skipUnchanged";
+	private static final String LABEL_TIDE_SKIP_UNCHANGED_MAX_AGE_SUFFIX = ".skipUnchanged.maxAge";
+	private static final String LABEL_TIDE_GROUPING_MAX_VOLUMES_SUFFIX = ".grouping.maxVolumes";
+	private static final String LABEL_TIDE_GROUPING_MAX_DURATION_SUFFIX = ".grouping.maxDuration";
+	private static final String LABEL_TIDE_GROUPING_RESTART_COST_SUFFIX = ".grouping.restartCost";
+	
+	/**
+	 * Assumed time it takes to stop and start a container again, if not configured otherwise.
+	 */
+	private static final Duration DEFAULT_RESTART_COST = Duration.ofSeconds(10);
+	
+	/**
+	 * Upper limits for groups created by {@link GroupingMode#BOUNDED}.
+	 *
+	 * @param maxVolumes  Maximum number of volumes in a single group.
+	 * @param maxDuration Maximum predicted duration of a single group, if any.
+	 * @param restartCost Predicted downtime caused by stopping and starting a container one additional time.
+	 */
+	public record GroupingBounds(int maxVolumes, Optional<Duration> maxDuration, Duration restartCost) {
+		
+		public static GroupingBounds fromLabels(String name, String prefix, Map<String, String> labels) {
+			int maxVolumes = Integer.MAX_VALUE;
+			try {
+				var s = labels.get(prefix + LABEL_TIDE_GROUPING_MAX_VOLUMES_SUFFIX);
+				if (s != null)
+					maxVolumes = Integer.parseInt(s);
+			} catch (NumberFormatException ignore) {
+				throw new IllegalArgumentException("tried to construct tide '" + name + "', but grouping.maxVolumes is not a number");
+			}
+			if (maxVolumes < 1)
+				throw new IllegalArgumentException("tried to construct tide '" + name + "', but grouping.maxVolumes is less than 1");
+			
+			var maxDuration = Optional.ofNullable(labels.get(prefix + LABEL_TIDE_GROUPING_MAX_DURATION_SUFFIX)).map(SalvageMain::parseDuration);
+			var restartCost = Optional.ofNullable(labels.get(prefix + LABEL_TIDE_GROUPING_RESTART_COST_SUFFIX))
+					.map(SalvageMain::parseDuration)
+					.orElse(DEFAULT_RESTART_COST);
+			
+			return new GroupingBounds(maxVolumes, maxDuration, restartCost);
+		}
+		
+		/**
+		 * Checks if a group with the given properties is within these bounds.
+		 *
+		 * @param volumes  Number of volumes in group.
+		 * @param makespan Predicted duration of group.
+		 * @return {@code true} if the group does not need to be split.
+		 */
+		public boolean fits(int volumes, Duration makespan) {
+			return volumes <= maxVolumes && maxDuration.map(max -> makespan.compareTo(max) <= 0).orElse(true);
+		}
+	}
+	
+	/**
+	 * @return Number of volumes that can be backed up at the same time, limited by both tide and cranes.
+	 */
+	public int slots() {
+		long craneSlots = 0;
+		for (var crane : cranes)
+			craneSlots += crane.maxConcurrent();
+		return (int) Math.min(maxConcurrent, craneSlots);
+	}
 	
 	public ZonedDateTime nextExecution(ZonedDateTime now) {
 		return ExecutionTime.forCron(cron).nextExecution(now).orElseThrow(() -> new IllegalStateException("tide '" + name + "' has no next execution time"));
@@ -69,15 +198,26 @@ public record SalvageTide(String name, SalvageCrane crane, GroupingMode grouping
 			throw new IllegalArgumentException("tried to construct tide '" + name + "', but no cron expression was found");
 		var cron = UNIX_CRONTAB_PARSER.parse(cronExpression).validate();
 		
-		var craneName = labels.get(prefix + LABEL_TIDE_CRANE_SUFFIX);
-		if (craneName == null)
+		var craneNames = labels.get(prefix + LABEL_TIDE_CRANE_SUFFIX);
+		if (craneNames == null)
 			throw new IllegalArgumentException("tried to construct tide '" + name + "', but no crane image was specified");
 		
-		var crane = cranes.get(craneName);
-		if (crane == null)
-			throw new IllegalArgumentException("tried to construct tide '" + name + "', but crane '" + craneName + "' is not known");
+		List<SalvageCrane> tideCranes;
+		try {
+			tideCranes = resolveCranes(craneNames, cranes);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("tried to construct tide '" + name + "', but " + e.getMessage(), e);
+		}
+		if (tideCranes.isEmpty())
+			throw new IllegalArgumentException("tried to construct tide '" + name + "', but no crane image was specified");
+		
+		var craneMode = CraneMode.fromString(labels.getOrDefault(prefix + LABEL_TIDE_CRANE_MODE_SUFFIX, "parallel"));
+		var type = TideType.fromString(labels.getOrDefault(prefix + LABEL_TIDE_TYPE_SUFFIX, "backup"));
 		
+		// verification doesn't touch containers, so grouping is irrelevant
 		var grouping = labels.get(prefix + LABEL_TIDE_GROUPING_SUFFIX);
+		if (grouping == null && type == TideType.VERIFY)
+			grouping = "smart";
 		if (grouping == null)
 			throw new IllegalArgumentException("tried to construct tide '" + name + "', but no grouping mode was specified");
 		
@@ -90,6 +230,11 @@ public record SalvageTide(String name, SalvageCrane crane, GroupingMode grouping
 			throw new IllegalArgumentException("tried to construct tide '" + name + "', but maxConcurrent is not a number");
 		}
 		
+		var timeout = Optional.ofNullable(labels.get(prefix + LABEL_TIDE_TIMEOUT_SUFFIX)).map(SalvageMain::parseDuration);
+		var snapshot = Boolean.parseBoolean(labels.get(prefix + LABEL_TIDE_SNAPSHOT_SUFFIX));
+		var skipUnchanged = Boolean.parseBoolean(labels.get(prefix + LABEL_TIDE_SKIP_UNCHANGED_SUFFIX));
+		var unchangedMaxAge = Optional.ofNullable(labels.get(prefix + LABEL_TIDE_SKIP_UNCHANGED_MAX_AGE_SUFFIX)).map(SalvageMain::parseDuration);
+		
 		ReportingUrlStore reportingUrlStore;
 		try {
 			reportingUrlStore = ReportingUrlStore.fromEnv(labels, prefix + ".report");
@@ -97,6 +242,33 @@ public record SalvageTide(String name, SalvageCrane crane, GroupingMode grouping
 			throw new IllegalArgumentException("tried to construct tide '" + name + "', but reporting url is malformed", e);
 		}
 		
-		return new SalvageTide(name, crane, GroupingMode.fromString(grouping), cron, maxConcurrent, reportingUrlStore);
+		var groupingBounds = GroupingBounds.fromLabels(name, prefix, labels);
+		
+		return new SalvageTide(name, type, tideCranes, craneMode, GroupingMode.fromString(grouping), groupingBounds, cron, maxConcurrent, timeout, snapshot, skipUnchanged, unchangedMaxAge,
+				reportingUrlStore);
+	}
+	
+	/**
+	 * Resolves a comma-separated list of crane names, keeping their order and dropping duplicates.
+	 *
+	 * @param names  Names of the cranes.
+	 * @param cranes All known cranes.
+	 * @return The resolved cranes.
+	 * @throws IllegalArgumentException If a crane is not known.
+	 */
+	public static List<SalvageCrane> resolveCranes(String names, Map<String, SalvageCrane> cranes) {
+		var resolved = new ArrayList<SalvageCrane>();
+		for (var craneName : names.split(",")) {
+			craneName = craneName.strip();
+			if (craneName.isEmpty())
+				continue;
+			
+			var crane = cranes.get(craneName);
+			if (crane == null)
+				throw new IllegalArgumentException("crane '" + craneName + "' is not known");
+			if (!resolved.contains(crane))
+				resolved.add(crane);
+		}
+		return List.copyOf(resolved);
 	}
 }
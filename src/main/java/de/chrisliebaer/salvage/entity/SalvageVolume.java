@@ -2,12 +2,65 @@ package de.chrisliebaer.salvage.entity;
 
 import com.github.dockerjava.api.command.InspectVolumeResponse;
 
-public record SalvageVolume(String name, BackupMeta.VolumeMeta meta) {
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * @param name   Name of the volume on the docker daemon.
+ * @param meta   Volume metadata, passed to the crane.
+ * @param crane  Name of the crane that should back up this volume instead of the tide's default crane.
+ * @param shards Number of shards this volume should be split into, {@code 1} if the volume is backed up as a whole.
+ * @param shard  Part of the volume covered by this instance, empty for the whole volume.
+ */
+public record SalvageVolume(String name, BackupMeta.VolumeMeta meta, Optional<String> crane, int shards, Optional<Shard> shard) {
+	
+	private static final String LABEL_VOLUME_CRANE = "salvage.crane";
+	private static final String LABEL_VOLUME_SHARDS = "salvage.shards";
+	
+	/**
+	 * A part of a volume, which is backed up by its own crane container. Exactly one of the lists is used, the first shard covers everything not covered by another shard,
+	 * so entries created after planning are never missed.
+	 *
+	 * @param index   Index of the shard, starting at zero.
+	 * @param count   Number of shards of the volume.
+	 * @param include Top-level entries of the volume covered by this shard.
+	 * @param exclude Top-level entries of the volume covered by other shards.
+	 */
+	public record Shard(int index, int count, List<String> include, List<String> exclude) {}
 	
 	public static SalvageVolume fromInspectVolumeResponse(InspectVolumeResponse volume) {
 		var name = volume.getName();
 		var meta = BackupMeta.VolumeMeta.fromVolumeInspect(volume);
 		
-		return new SalvageVolume(name, meta);
+		// volumes without any labels report null instead of an empty map
+		var labels = volume.getLabels();
+		var crane = labels == null ? Optional.<String>empty() : Optional.ofNullable(labels.get(LABEL_VOLUME_CRANE));
+		
+		var shards = 1;
+		if (labels != null && labels.containsKey(LABEL_VOLUME_SHARDS)) {
+			try {
+				shards = Integer.parseInt(labels.get(LABEL_VOLUME_SHARDS));
+			} catch (NumberFormatException ignore) {
+				throw new IllegalArgumentException("tried to construct volume '" + name + "', but shards is not a number");
+			}
+			if (shards < 1)
+				throw new IllegalArgumentException("tried to construct volume '" + name + "', but shards is less than 1");
+		}
+		
+		return new SalvageVolume(name, meta, crane, shards, Optional.empty());
+	}
+	
+	/**
+	 * @return Instance of this volume only covering the given shard.
+	 */
+	public SalvageVolume shard(int index, int count, List<String> include, List<String> exclude) {
+		return new SalvageVolume(name, meta, crane, shards, Optional.of(new Shard(index, count, List.copyOf(include), List.copyOf(exclude))));
+	}
+	
+	/**
+	 * @return Instance of this volume covering the whole volume, which is the same instance unless this is a shard.
+	 */
+	public SalvageVolume whole() {
+		return shard.isEmpty() ? this : new SalvageVolume(name, meta, crane, shards, Optional.empty());
 	}
 }
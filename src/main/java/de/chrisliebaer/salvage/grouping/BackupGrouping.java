@@ -7,11 +7,13 @@ import com.google.common.graph.Traverser;
 import de.chrisliebaer.salvage.entity.SalvageContainer;
 import de.chrisliebaer.salvage.entity.SalvageTide;
 import de.chrisliebaer.salvage.entity.SalvageVolume;
+import de.chrisliebaer.salvage.planning.BackupJobs;
 import lombok.Getter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
@@ -21,6 +23,8 @@ import java.util.function.Predicate;
  * The graph is then traversed to find strongly connected components (SCCs) and then the SCCs are grouped into groups. Each group contains a minimal set of containers
  * that need to be touched during backup. Depending on the grouping mode, traversal will be done while ignoring certain edges in the resulting graph, leading to different
  * backup groups. While each volume is guaranteed to be part of exactly one group, a container can be part of multiple groups, depending on the grouping mode.
+ * Groups of {@link SalvageTide.GroupingMode#BOUNDED} are additionally split by {@link GroupSplitter} if they exceed the configured bounds. Groups of any mode are split if
+ * they would exceed the downtime budget of one of their containers.
  */
 @Slf4j
 public final class BackupGrouping {
@@ -28,11 +32,13 @@ public final class BackupGrouping {
 	private final List<SalvageContainer> containers;
 	private final Map<String, SalvageVolume> volumes;
 	private final SalvageTide.GroupingMode groupingMode;
+	private final GroupSplitter splitter;
 	
-	private BackupGrouping(List<SalvageContainer> containers, Map<String, SalvageVolume> volumes, SalvageTide.GroupingMode groupingMode) {
+	private BackupGrouping(List<SalvageContainer> containers, Map<String, SalvageVolume> volumes, SalvageTide.GroupingMode groupingMode, GroupSplitter splitter) {
 		this.containers = containers;
 		this.volumes = volumes;
 		this.groupingMode = groupingMode;
+		this.splitter = splitter;
 	}
 	
 	private ImmutableGraph<Node> buildGraph() {
@@ -66,8 +72,8 @@ public final class BackupGrouping {
 			// only follow edges to containers
 			case INDIVIDUAL -> node -> node instanceof ContainerNode;
 			
-			// do not connect containers via project nodes
-			case SMART -> node -> !(node instanceof ProjectNode);
+			// do not connect containers via project nodes (bounded groups are split after traversal)
+			case SMART, BOUNDED -> node -> !(node instanceof ProjectNode);
 			
 			// follow all edges
 			case PROJECT -> node -> true;
@@ -89,14 +95,46 @@ public final class BackupGrouping {
 			}
 			
 			// note: we always start at a volume node, so each group will contain at least one volume
-			groups.add(group);
+			var splitGroups = groupingMode == SalvageTide.GroupingMode.BOUNDED ? splitter.split(group) : List.of(group);
+			
+			// containers with downtime budget might require further splitting, regardless of grouping mode
+			for (var splitGroup : splitGroups)
+				groups.addAll(splitter.splitForBudget(splitGroup));
 		}
 		
 		return groups;
 	}
 	
-	public static List<Group> groups(List<SalvageContainer> containers, Map<String, SalvageVolume> volumes, SalvageTide.GroupingMode groupingMode) {
-		return new BackupGrouping(containers, volumes, groupingMode).groups();
+	/**
+	 * Groups the given containers and volumes.
+	 *
+	 * @param containers   Containers that depend on the volumes.
+	 * @param volumes      Volumes of the tide.
+	 * @param groupingMode Grouping mode to use.
+	 * @param bounds       Upper limits for group size, only used by {@link SalvageTide.GroupingMode#BOUNDED}.
+	 * @param slots        Number of volumes that can be backed up at the same time, used for predicting group duration.
+	 * @param jobs         Predicts the crane runs of volumes, used for predicting group duration.
+	 * @return List of groups, each volume is part of exactly one group.
+	 */
+	public static List<Group> groups(List<SalvageContainer> containers, Map<String, SalvageVolume> volumes, SalvageTide.GroupingMode groupingMode,
+									 SalvageTide.GroupingBounds bounds, int slots, BackupJobs jobs) {
+		return new BackupGrouping(containers, volumes, groupingMode, new GroupSplitter(bounds, slots, jobs)).groups();
+	}
+	
+	/**
+	 * Finds all containers that are part of more than one group and will therefore be stopped and started multiple times.
+	 *
+	 * @param groups Groups to check.
+	 * @return Number of groups for each container that is part of more than one group, in order of first appearance.
+	 */
+	public static Map<SalvageContainer, Integer> cycledContainers(List<Group> groups) {
+		var cycles = new LinkedHashMap<SalvageContainer, Integer>();
+		for (var group : groups) {
+			for (var container : group.containers())
+				cycles.merge(container, 1, Integer::sum);
+		}
+		cycles.values().removeIf(count -> count < 2);
+		return cycles;
 	}
 	
 	@ToString
@@ -106,11 +144,11 @@ public final class BackupGrouping {
 		@Getter private final List<SalvageContainer> containers = new ArrayList<>();
 		@Getter private final List<SalvageVolume> volumes = new ArrayList<>();
 		
-		private void addContainer(SalvageContainer container) {
+		void addContainer(SalvageContainer container) {
 			containers.add(container);
 		}
 		
-		private void addVolume(SalvageVolume volume) {
+		void addVolume(SalvageVolume volume) {
 			volumes.add(volume);
 		}
 	}
@@ -0,0 +1,65 @@
+package de.chrisliebaer.salvage.grouping;
+
+import de.chrisliebaer.salvage.entity.SalvageContainer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Orders containers into waves according to their compose {@code depends_on} relations. All containers of a wave can be started at the same time, once all previous
+ * waves have been started. Stopping is done in reverse order, so dependents are always stopped before the services they depend on. Dependencies are only considered
+ * between containers of the same compose project, and dependencies on containers outside the given list are ignored.
+ */
+@Slf4j
+public final class ContainerWaves {
+	
+	private ContainerWaves() {}
+	
+	/**
+	 * Calculates the order in which the given containers need to be started.
+	 *
+	 * @param containers Containers to order.
+	 * @return Waves of containers, dependencies come before their dependents.
+	 */
+	public static List<List<SalvageContainer>> startOrder(List<SalvageContainer> containers) {
+		var remaining = new ArrayList<>(containers);
+		var waves = new ArrayList<List<SalvageContainer>>();
+		
+		while (!remaining.isEmpty()) {
+			// every container without unresolved dependencies can be started now
+			var wave = remaining.stream()
+					.filter(c -> remaining.stream().noneMatch(other -> other != c && dependsOn(c, other)))
+					.toList();
+			
+			// dependency cycles can't be resolved, so we start all remaining containers at once
+			if (wave.isEmpty()) {
+				log.warn("found dependency cycle between containers {}, ignoring dependencies", remaining.stream().map(SalvageContainer::name).toList());
+				wave = List.copyOf(remaining);
+			}
+			
+			waves.add(wave);
+			remaining.removeAll(wave);
+		}
+		
+		return waves;
+	}
+	
+	/**
+	 * Calculates the order in which the given containers need to be stopped.
+	 *
+	 * @param containers Containers to order.
+	 * @return Waves of containers, dependents come before their dependencies.
+	 */
+	public static List<List<SalvageContainer>> stopOrder(List<SalvageContainer> containers) {
+		return startOrder(containers).reversed();
+	}
+	
+	private static boolean dependsOn(SalvageContainer container, SalvageContainer dependency) {
+		if (container.project().isEmpty() || !Objects.equals(container.project(), dependency.project()))
+			return false;
+		
+		return dependency.service().map(container.dependsOn()::contains).orElse(false);
+	}
+}
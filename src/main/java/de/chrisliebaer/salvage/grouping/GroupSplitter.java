@@ -0,0 +1,151 @@
+package de.chrisliebaer.salvage.grouping;
+
+import de.chrisliebaer.salvage.entity.SalvageContainer;
+import de.chrisliebaer.salvage.entity.SalvageTide;
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import de.chrisliebaer.salvage.planning.BackupJobs;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Splits groups that exceed the configured {@link SalvageTide.GroupingBounds} into smaller groups. Splitting a group means that containers using volumes of multiple
+ * resulting groups need to be stopped and started multiple times. A split is therefore only performed if the predicted downtime, summed up over all containers of the
+ * group and including the cost of additional restarts, is lower than the downtime of the unsplit group. Groups containing containers with a downtime budget are split
+ * whenever this shortens the downtime window of these containers.
+ */
+@Slf4j
+final class GroupSplitter {
+	
+	private final SalvageTide.GroupingBounds bounds;
+	private final int slots;
+	private final BackupJobs jobs;
+	
+	GroupSplitter(SalvageTide.GroupingBounds bounds, int slots, BackupJobs jobs) {
+		this.bounds = bounds;
+		this.slots = slots;
+		this.jobs = jobs;
+	}
+	
+	List<BackupGrouping.Group> split(BackupGrouping.Group group) {
+		var volumes = group.volumes();
+		var makespan = makespan(volumes);
+		if (bounds.fits(volumes.size(), makespan))
+			return List.of(group);
+		
+		var splitGroups = chunk(group, bounds);
+		
+		// compare downtime of all containers, each cycle of a container costs the makespan of its group plus the restart itself
+		var unsplitDowntime = makespan.plus(bounds.restartCost()).multipliedBy(group.containers().size());
+		var splitDowntime = Duration.ZERO;
+		for (var splitGroup : splitGroups) {
+			var cycle = makespan(splitGroup.volumes()).plus(bounds.restartCost());
+			splitDowntime = splitDowntime.plus(cycle.multipliedBy(splitGroup.containers().size()));
+		}
+		
+		if (splitDowntime.compareTo(unsplitDowntime) >= 0) {
+			log.debug("not splitting group with {} volumes, predicted downtime would increase from {} to {}", volumes.size(), unsplitDowntime, splitDowntime);
+			return List.of(group);
+		}
+		
+		log.debug("split group with {} volumes into {} groups, predicted downtime reduced from {} to {}", volumes.size(), splitGroups.size(), unsplitDowntime, splitDowntime);
+		return splitGroups;
+	}
+	
+	/**
+	 * Splits groups in which a container with a downtime budget would be down for longer than its budget. Unlike {@link #split(BackupGrouping.Group)}, this is done
+	 * regardless of the total downtime, but only if it actually shortens the downtime window of the containers with the tightest budget.
+	 *
+	 * @param group Group to check.
+	 * @return Either the original group or the split groups.
+	 */
+	List<BackupGrouping.Group> splitForBudget(BackupGrouping.Group group) {
+		var budget = group.containers().stream()
+				.filter(c -> c.action() != SalvageContainer.ContainerAction.IGNORE)
+				.flatMap(c -> c.maxDowntime().stream())
+				.min(Duration::compareTo);
+		if (budget.isEmpty())
+			return List.of(group);
+		
+		var cycle = makespan(group.volumes()).plus(bounds.restartCost());
+		var limit = budget.get().minus(bounds.restartCost());
+		if (cycle.compareTo(budget.get()) <= 0 || limit.isNegative() || limit.isZero())
+			return List.of(group);
+		
+		var maxDuration = bounds.maxDuration().filter(d -> d.compareTo(limit) < 0).orElse(limit);
+		var budgetBounds = new SalvageTide.GroupingBounds(bounds.maxVolumes(), Optional.of(maxDuration), bounds.restartCost());
+		var splitGroups = chunk(group, budgetBounds);
+		
+		// longest window any budgeted container would be down for after the split
+		var splitCycle = Duration.ZERO;
+		for (var splitGroup : splitGroups) {
+			var hasBudget = splitGroup.containers().stream().anyMatch(c -> c.maxDowntime().isPresent());
+			var splitGroupCycle = makespan(splitGroup.volumes()).plus(bounds.restartCost());
+			if (hasBudget && splitGroupCycle.compareTo(splitCycle) > 0)
+				splitCycle = splitGroupCycle;
+		}
+		
+		if (splitCycle.compareTo(cycle) >= 0) {
+			log.debug("group with {} volumes exceeds downtime budget of {} but can't be split any further", group.volumes().size(), budget.get());
+			return List.of(group);
+		}
+		
+		log.debug("split group with {} volumes into {} groups to honor downtime budget of {}", group.volumes().size(), splitGroups.size(), budget.get());
+		return splitGroups;
+	}
+	
+	/**
+	 * Divides the volumes of the given group into chunks that fit into the given bounds and creates a group for each chunk, containing all containers depending on it.
+	 */
+	private List<BackupGrouping.Group> chunk(BackupGrouping.Group group, SalvageTide.GroupingBounds chunkBounds) {
+		// place volumes used by the same set of containers next to each other, so chunks cut through as few containers as possible
+		var sorted = new ArrayList<>(group.volumes());
+		sorted.sort(Comparator.comparing((SalvageVolume v) -> signature(group.containers(), v))
+				.thenComparing(jobs.estimator()::estimate, Comparator.reverseOrder()));
+		
+		var chunks = new ArrayList<List<SalvageVolume>>();
+		var current = new ArrayList<SalvageVolume>();
+		for (var volume : sorted) {
+			current.add(volume);
+			
+			// a single volume exceeding the bounds can't be split any further and ends up in its own chunk
+			if (current.size() > 1 && !chunkBounds.fits(current.size(), makespan(current))) {
+				current.removeLast();
+				chunks.add(current);
+				current = new ArrayList<>();
+				current.add(volume);
+			}
+		}
+		chunks.add(current);
+		
+		var splitGroups = new ArrayList<BackupGrouping.Group>(chunks.size());
+		for (var chunk : chunks) {
+			var splitGroup = new BackupGrouping.Group();
+			chunk.forEach(splitGroup::addVolume);
+			for (var container : group.containers()) {
+				if (chunk.stream().anyMatch(container.volumes()::contains))
+					splitGroup.addContainer(container);
+			}
+			splitGroups.add(splitGroup);
+		}
+		return splitGroups;
+	}
+	
+	private Duration makespan(Collection<SalvageVolume> volumes) {
+		return jobs.makespan(volumes, slots);
+	}
+	
+	private static String signature(List<SalvageContainer> containers, SalvageVolume volume) {
+		return containers.stream()
+				.filter(c -> c.volumes().contains(volume))
+				.map(SalvageContainer::id)
+				.sorted()
+				.collect(Collectors.joining(","));
+	}
+}
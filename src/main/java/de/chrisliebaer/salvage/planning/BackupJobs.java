@@ -0,0 +1,54 @@
+package de.chrisliebaer.salvage.planning;
+
+import de.chrisliebaer.salvage.entity.SalvageCrane;
+import de.chrisliebaer.salvage.entity.SalvageTide;
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Predicts the crane runs the executor will perform for a set of volumes. Grouping, dry runs and the downtime announced to containers all rely on this model, so their
+ * predictions match the way volumes are actually backed up.
+ *
+ * @param craneMode Controls whether the cranes of a volume run at the same time or one after another.
+ * @param routing   Cranes that back up each volume.
+ * @param shards    Shards of each sharded volume, volumes without an entry are backed up as a whole.
+ * @param estimator Predicts backup duration of individual volumes.
+ */
+public record BackupJobs(SalvageTide.CraneMode craneMode, Map<SalvageVolume, List<SalvageCrane>> routing, Map<SalvageVolume, List<SalvageVolume>> shards,
+						 DurationEstimator estimator) {
+
+	/**
+	 * @return Predicted duration of every crane run of the given volumes. Cranes of the same volume running in sequence are a single run, since they can't overlap.
+	 * Shards are assumed to split the duration of their volume evenly.
+	 */
+	public List<Duration> of(Collection<SalvageVolume> volumes) {
+		var jobs = new ArrayList<Duration>();
+		for (var volume : volumes) {
+			var parts = shards.getOrDefault(volume, List.of(volume)).size();
+			var estimate = estimator.estimate(volume).dividedBy(parts);
+			var count = routing.get(volume).size();
+			for (int i = 0; i < parts; i++) {
+				if (craneMode == SalvageTide.CraneMode.SEQUENTIAL)
+					jobs.add(estimate.multipliedBy(count));
+				else
+					jobs.addAll(Collections.nCopies(count, estimate));
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * @param volumes Volumes that are backed up together.
+	 * @param slots   Number of crane runs that can happen at the same time.
+	 * @return Predicted time until all crane runs of the given volumes have finished.
+	 */
+	public Duration makespan(Collection<SalvageVolume> volumes, int slots) {
+		return Makespan.of(of(volumes), slots);
+	}
+}
@@ -0,0 +1,20 @@
+package de.chrisliebaer.salvage.planning;
+
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+
+import java.time.Duration;
+
+/**
+ * Implementations of this interface predict how long a crane will take to back up a given volume. Predictions are used for planning only and never need to be exact.
+ */
+@FunctionalInterface
+public interface DurationEstimator {
+	
+	/**
+	 * Predicts the duration of a backup of the given volume.
+	 *
+	 * @param volume Volume that will be backed up.
+	 * @return Predicted duration, never negative.
+	 */
+	Duration estimate(SalvageVolume volume);
+}
@@ -0,0 +1,42 @@
+package de.chrisliebaer.salvage.planning;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Predicts how long it takes to work through a set of jobs with a limited number of parallel slots.
+ */
+public enum Makespan {
+	;
+	
+	/**
+	 * Calculates the makespan of the given jobs, assuming they are handed out longest job first to whichever slot becomes free first.
+	 *
+	 * @param durations Predicted duration of each job.
+	 * @param slots     Number of jobs that can run at the same time.
+	 * @return Time until the last job has finished.
+	 */
+	public static Duration of(Collection<Duration> durations, int slots) {
+		if (durations.isEmpty())
+			return Duration.ZERO;
+		
+		var sorted = durations.stream().sorted(Comparator.reverseOrder()).toList();
+		var slotCount = Math.max(1, Math.min(slots, sorted.size()));
+		
+		// each entry is the time at which a slot becomes free again
+		var freeAt = new PriorityQueue<Duration>(slotCount);
+		for (int i = 0; i < slotCount; i++)
+			freeAt.add(Duration.ZERO);
+		
+		var makespan = Duration.ZERO;
+		for (var duration : sorted) {
+			var end = freeAt.remove().plus(duration);
+			freeAt.add(end);
+			if (end.compareTo(makespan) > 0)
+				makespan = end;
+		}
+		return makespan;
+	}
+}
@@ -0,0 +1,93 @@
+package de.chrisliebaer.salvage.planning;
+
+import de.chrisliebaer.salvage.SalvageMain;
+import de.chrisliebaer.salvage.entity.SalvageContainer;
+import de.chrisliebaer.salvage.entity.SalvageCrane;
+import de.chrisliebaer.salvage.entity.SalvageTide;
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import de.chrisliebaer.salvage.grouping.BackupGrouping;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Creates execution plans for tides without touching any container. The plan of the configured grouping mode is logged in detail, followed by a comparison of the
+ * predicted downtime and wall time of all grouping modes. Predictions are based on previous backups of each volume or an assumed duration, if no backup was recorded.
+ */
+@Log4j2
+public class TidePlanner {
+	
+	private final VolumeHistory history;
+	
+	public TidePlanner(VolumeHistory history) {
+		this.history = history;
+	}
+	
+	/**
+	 * Logs the execution plan of the given tide.
+	 *
+	 * @param tide       Tide to plan.
+	 * @param containers Containers of the tide.
+	 * @param volumes    Volumes of the tide.
+	 * @param routing    Cranes that back up each volume. Shards are not planned without touching volumes, so sharded volumes are predicted as a whole.
+	 */
+	public void plan(SalvageTide tide, List<SalvageContainer> containers, Map<String, SalvageVolume> volumes, Map<SalvageVolume, List<SalvageCrane>> routing) {
+		var slots = tide.slots();
+		var restartCost = tide.groupingBounds().restartCost();
+		var jobs = new BackupJobs(tide.craneMode(), routing, Map.of(), history);
+		
+		var simulations = new EnumMap<SalvageTide.GroupingMode, TideSimulation>(SalvageTide.GroupingMode.class);
+		for (var mode : SalvageTide.GroupingMode.values()) {
+			var groups = BackupGrouping.groups(containers, volumes, mode, tide.groupingBounds(), slots, jobs);
+			simulations.put(mode, TideSimulation.simulate(groups, jobs, slots, restartCost));
+		}
+		
+		var configured = simulations.get(tide.groupingMode());
+		log.info("execution plan for tide '{}' using grouping '{}' with {} slots:", tide.name(), tide.groupingMode(), slots == Integer.MAX_VALUE ? "unlimited" : slots);
+		for (int i = 0; i < configured.groups().size(); i++) {
+			var prediction = configured.groups().get(i);
+			var group = prediction.group();
+			log.info("\t- group no. {} starts after {} and takes {}", i, format(prediction.start()), format(prediction.makespan()));
+			for (var container : group.containers())
+				log.info("\t\t- stops container {} ({})", container.name(), container.action());
+			for (var volume : group.volumes()) {
+				String source;
+				if (history.lastDuration(volume).isPresent())
+					source = "previous backup";
+				else if (history.sizeEstimate(volume).isPresent())
+					source = "estimated from size";
+				else
+					source = "assumed";
+				log.info("\t\t- backs up volume {} in {} ({})", volume.name(), format(history.estimate(volume)), source);
+			}
+		}
+		
+		log.info("predicted outcome of each grouping mode for tide '{}':", tide.name());
+		for (var entry : simulations.entrySet()) {
+			var simulation = entry.getValue();
+			log.info("\t- {}: {} groups, wall time {}, total downtime {}, max downtime {}",
+					entry.getKey(),
+					simulation.groups().size(),
+					format(simulation.wallTime()),
+					format(simulation.totalDowntime()),
+					format(simulation.maxDowntime()));
+		}
+		
+		log.info("predicted downtime of each container for tide '{}':", tide.name());
+		for (var container : containers) {
+			var downtimes = simulations.entrySet().stream()
+					.map(e -> e.getKey() + ": " + format(e.getValue().downtime().getOrDefault(container, Duration.ZERO)))
+					.collect(Collectors.joining(", "));
+			log.info("\t- {}: {}", container.name(), downtimes);
+		}
+	}
+	
+	private static String format(Duration duration) {
+		// formatDuration is meant for waiting times and reports zero as "now"
+		return duration.isZero() ? "0s" : SalvageMain.formatDuration(duration);
+	}
+}
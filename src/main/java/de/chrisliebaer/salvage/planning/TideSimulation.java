@@ -0,0 +1,71 @@
+package de.chrisliebaer.salvage.planning;
+
+import de.chrisliebaer.salvage.entity.SalvageContainer;
+import de.chrisliebaer.salvage.grouping.BackupGrouping;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Predicted schedule of a tide. Groups are executed in series, volumes within a group are spread over the available slots. Containers are down for the predicted
+ * duration of each group they are part of, plus the time it takes to stop and start them.
+ *
+ * @param groups   Predictions for each group, in order of execution.
+ * @param downtime Predicted downtime of each container, summed up over all groups.
+ * @param wallTime Predicted duration of the entire tide.
+ */
+public record TideSimulation(List<GroupPrediction> groups, Map<SalvageContainer, Duration> downtime, Duration wallTime) {
+	
+	/**
+	 * @param group    The predicted group.
+	 * @param start    Offset from tide start, at which the group starts.
+	 * @param makespan Predicted duration of the volume backups in this group.
+	 */
+	public record GroupPrediction(BackupGrouping.Group group, Duration start, Duration makespan) {}
+	
+	/**
+	 * Simulates the execution of the given groups.
+	 *
+	 * @param groups      Groups in order of execution.
+	 * @param jobs        Predicts the crane runs of the volumes in each group.
+	 * @param slots       Number of crane runs that can happen at the same time.
+	 * @param restartCost Time it takes to stop and start containers of a group.
+	 * @return The predicted schedule.
+	 */
+	public static TideSimulation simulate(List<BackupGrouping.Group> groups, BackupJobs jobs, int slots, Duration restartCost) {
+		var predictions = new ArrayList<GroupPrediction>(groups.size());
+		var downtime = new LinkedHashMap<SalvageContainer, Duration>();
+		var clock = Duration.ZERO;
+		
+		for (var group : groups) {
+			var makespan = jobs.makespan(group.volumes(), slots);
+			predictions.add(new GroupPrediction(group, clock, makespan));
+			
+			// groups without containers don't need to stop anything
+			var cycle = group.containers().isEmpty() ? makespan : makespan.plus(restartCost);
+			for (var container : group.containers())
+				downtime.merge(container, cycle, Duration::plus);
+			
+			clock = clock.plus(cycle);
+		}
+		
+		return new TideSimulation(predictions, downtime, clock);
+	}
+	
+	/**
+	 * @return Downtime summed up over all containers.
+	 */
+	public Duration totalDowntime() {
+		return downtime.values().stream().reduce(Duration.ZERO, Duration::plus);
+	}
+	
+	/**
+	 * @return Highest downtime of any single container.
+	 */
+	public Duration maxDowntime() {
+		return downtime.values().stream().max(Duration::compareTo).orElse(Duration.ZERO);
+	}
+}
@@ -0,0 +1,225 @@
+package de.chrisliebaer.salvage.planning;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Remembers how long previous backups of each volume took and uses these observations to predict future backups. Volumes that have never been backed up are estimated
+ * from their measured size and the throughput of previous backups, or assumed to take a fixed default duration if neither is known. If a file is given, observations are
+ * persisted so they survive restarts and can be used by dry runs.
+ */
+@Log4j2
+public class VolumeHistory implements DurationEstimator {
+	
+	/**
+	 * Used for volumes without any recorded backup.
+	 */
+	public static final Duration DEFAULT_ESTIMATE = Duration.ofMinutes(1);
+	
+	private static final Gson GSON = new GsonBuilder()
+			.disableHtmlEscaping()
+			.setPrettyPrinting()
+			.create();
+	
+	private final Map<String, Entry> entries = new HashMap<>();
+	private final Optional<Path> file;
+	private final Duration defaultEstimate;
+	
+	public VolumeHistory(Optional<Path> file, Duration defaultEstimate) {
+		this.file = file;
+		this.defaultEstimate = defaultEstimate;
+	}
+	
+	/**
+	 * Creates a history backed by the given file. If the file does not exist yet, the history starts out empty. Unreadable files are logged and ignored, since losing the
+	 * history only degrades predictions.
+	 *
+	 * @param file            File to load from and persist to.
+	 * @param defaultEstimate Estimate for volumes without recorded backups.
+	 * @return History with all entries of the given file.
+	 */
+	public static VolumeHistory load(Path file, Duration defaultEstimate) {
+		var history = new VolumeHistory(Optional.of(file), defaultEstimate);
+		if (!Files.exists(file))
+			return history;
+		
+		try {
+			var json = Files.readString(file, StandardCharsets.UTF_8);
+			Map<String, Entry> entries = GSON.fromJson(json, new TypeToken<Map<String, Entry>>() {}.getType());
+			if (entries != null)
+				history.entries.putAll(entries);
+			log.debug("loaded history of {} volumes from '{}'", history.entries.size(), file);
+		} catch (IOException | JsonParseException e) {
+			log.warn("failed to load volume history from '{}', starting with empty history", file, e);
+		}
+		return history;
+	}
+	
+	/**
+	 * Records the duration of a successful backup.
+	 *
+	 * @param volume   Volume that has been backed up.
+	 * @param duration Duration of the backup.
+	 */
+	public synchronized void record(SalvageVolume volume, Duration duration) {
+		log.trace("recording backup duration of '{}' for volume '{}'", duration, volume.name());
+		entries.computeIfAbsent(volume.name(), k -> new Entry()).durationMillis = duration.toMillis();
+	}
+	
+	/**
+	 * Records the measured size and backing device of a volume.
+	 *
+	 * @param volume     Volume that has been measured.
+	 * @param bytes      Size of the volume.
+	 * @param device     Identifier of the device the volume is stored on.
+	 * @param measuredAt Time of the measurement.
+	 */
+	public synchronized void recordMeasurement(SalvageVolume volume, long bytes, String device, Instant measuredAt) {
+		var entry = entries.computeIfAbsent(volume.name(), k -> new Entry());
+		entry.sizeBytes = bytes;
+		entry.device = device;
+		entry.sizeMeasuredAt = measuredAt.toEpochMilli();
+	}
+	
+	/**
+	 * @param volume Volume to look up.
+	 * @param ttl    Maximum age of a measurement.
+	 * @param now    Current time.
+	 * @return {@code true} if the volume has never been measured or the last measurement is older than the given time-to-live.
+	 */
+	public synchronized boolean isSizeStale(SalvageVolume volume, Duration ttl, Instant now) {
+		var entry = entries.get(volume.name());
+		if (entry == null || entry.sizeBytes == null || entry.sizeMeasuredAt == null || entry.device == null)
+			return true;
+		return Instant.ofEpochMilli(entry.sizeMeasuredAt).plus(ttl).isBefore(now);
+	}
+	
+	/**
+	 * @param volume Volume to look up.
+	 * @return Last measured size of the given volume in bytes, if known.
+	 */
+	public synchronized Optional<Long> size(SalvageVolume volume) {
+		return Optional.ofNullable(entries.get(volume.name())).map(entry -> entry.sizeBytes);
+	}
+	
+	/**
+	 * Records the fingerprint of a volume after it has been backed up successfully.
+	 *
+	 * @param volume      Volume that has been backed up.
+	 * @param fingerprint Fingerprint taken before the backup.
+	 * @param backedUpAt  Time of the backup.
+	 */
+	public synchronized void recordFingerprint(SalvageVolume volume, String fingerprint, Instant backedUpAt) {
+		var entry = entries.computeIfAbsent(volume.name(), k -> new Entry());
+		entry.fingerprint = fingerprint;
+		entry.fingerprintAt = backedUpAt.toEpochMilli();
+	}
+	
+	/**
+	 * @param volume      Volume to look up.
+	 * @param fingerprint Current fingerprint of the volume.
+	 * @param maxAge      Maximum age of the last backup, if any.
+	 * @param now         Current time.
+	 * @return {@code true} if the volume had the same fingerprint during its last successful backup, and that backup is recent enough.
+	 */
+	public synchronized boolean isUnchanged(SalvageVolume volume, String fingerprint, Optional<Duration> maxAge, Instant now) {
+		var entry = entries.get(volume.name());
+		if (entry == null || entry.fingerprint == null || entry.fingerprintAt == null || !entry.fingerprint.equals(fingerprint))
+			return false;
+		return maxAge.map(age -> !Instant.ofEpochMilli(entry.fingerprintAt).plus(age).isBefore(now)).orElse(true);
+	}
+	
+	/**
+	 * Writes the current history to its file, if any. Failures are logged but not propagated.
+	 */
+	public synchronized void save() {
+		if (file.isEmpty())
+			return;
+		
+		var path = file.get();
+		try {
+			var tmp = path.resolveSibling(path.getFileName() + ".tmp");
+			Files.writeString(tmp, GSON.toJson(entries), StandardCharsets.UTF_8);
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.warn("failed to persist volume history to '{}'", path, e);
+		}
+	}
+	
+	/**
+	 * @param volume Volume to look up.
+	 * @return Duration of the last successful backup of the given volume, if known.
+	 */
+	public synchronized Optional<Duration> lastDuration(SalvageVolume volume) {
+		return Optional.ofNullable(entries.get(volume.name()))
+				.map(entry -> entry.durationMillis)
+				.map(Duration::ofMillis);
+	}
+	
+	/**
+	 * @param volume Volume to look up.
+	 * @return Identifier of the device the volume was stored on during its last measurement, if known.
+	 */
+	public synchronized Optional<String> device(SalvageVolume volume) {
+		return Optional.ofNullable(entries.get(volume.name())).map(entry -> entry.device);
+	}
+	
+	/**
+	 * @param volume Volume to look up.
+	 * @return Predicted duration based on the volume's size and the throughput of previous backups, if both are known.
+	 */
+	public synchronized Optional<Duration> sizeEstimate(SalvageVolume volume) {
+		var size = size(volume);
+		if (size.isEmpty())
+			return Optional.empty();
+		
+		// throughput over all volumes for which both size and duration are known, weighted by size
+		long bytes = 0;
+		long millis = 0;
+		for (var entry : entries.values()) {
+			if (entry.sizeBytes != null && entry.durationMillis != null) {
+				bytes += entry.sizeBytes;
+				millis += entry.durationMillis;
+			}
+		}
+		if (bytes == 0 || millis == 0)
+			return Optional.empty();
+		
+		return Optional.of(Duration.ofMillis(Math.round((double) size.get() * millis / bytes)));
+	}
+	
+	@Override
+	public Duration estimate(SalvageVolume volume) {
+		return lastDuration(volume)
+				.or(() -> sizeEstimate(volume))
+				.orElse(defaultEstimate);
+	}
+	
+	/**
+	 * Persisted state of a single volume. This is a mutable class rather than a record, since Gson can't deserialize records.
+	 */
+	private static final class Entry {
+		
+		private Long durationMillis;
+		private Long sizeBytes;
+		private Long sizeMeasuredAt;
+		private String device;
+		private String fingerprint;
+		private Long fingerprintAt;
+	}
+}
@@ -0,0 +1,17 @@
+package de.chrisliebaer.salvage.reporting;
+
+import de.chrisliebaer.salvage.entity.SalvageContainer;
+
+import java.time.Duration;
+
+/**
+ * Records which action was picked for a container with {@link SalvageContainer.ContainerAction#AUTO} and how long the container was actually down as a result. Comparing
+ * predicted and actual downtime allows tuning the pause threshold of a container.
+ *
+ * @param container Container the action was picked for.
+ * @param action    The picked action, either {@link SalvageContainer.ContainerAction#PAUSE} or {@link SalvageContainer.ContainerAction#STOP}.
+ * @param predicted Predicted downtime the decision was based on.
+ * @param threshold Pause threshold of the container.
+ * @param downtime  Measured downtime.
+ */
+public record ActionDecision(SalvageContainer container, SalvageContainer.ContainerAction action, Duration predicted, Duration threshold, Duration downtime) {}
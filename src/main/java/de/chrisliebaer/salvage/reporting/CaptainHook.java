@@ -6,6 +6,7 @@ import de.chrisliebaer.salvage.entity.SalvageVolume;
 
 import java.time.Duration;
 import java.util.Collection;
+import java.util.Optional;
 
 /**
  * Implementations of this interface provide reporting facilities to provide feedback to external systems and will be invoked after a tide has finished in order to report
@@ -19,8 +20,9 @@ public interface CaptainHook {
 	 * @param volume   Volume that has been backed up.
 	 * @param crane    Crane that was used to back up the volume.
 	 * @param duration Duration of the backup.
+	 * @param progress Last progress reported by the crane, if any.
 	 */
-	void reportVolumeSuccess(SalvageVolume volume, SalvageCrane crane, Duration duration);
+	void reportVolumeSuccess(SalvageVolume volume, SalvageCrane crane, Duration duration, Optional<VolumeProgress.Summary> progress);
 	
 	/**
 	 * Called when a volume backup has failed.
@@ -29,8 +31,18 @@ public interface CaptainHook {
 	 * @param crane    Crane that was used to back up the volume.
 	 * @param message  Message describing the failure or last message reported by the crane.
 	 * @param duration Duration of the backup up until the failure occurred.
+	 * @param progress Last progress reported by the crane, if any.
 	 */
-	void reportVolumeFailure(SalvageVolume volume, SalvageCrane crane, String message, Duration duration);
+	void reportVolumeFailure(SalvageVolume volume, SalvageCrane crane, String message, Duration duration, Optional<VolumeProgress.Summary> progress);
+	
+	/**
+	 * Called when a volume has been skipped, since it hasn't changed since its last successful backup.
+	 *
+	 * @param volume Volume that has been skipped.
+	 * @param crane  Crane that would have backed up the volume.
+	 * @param reason Reason for skipping the volume.
+	 */
+	void reportVolumeSkipped(SalvageVolume volume, SalvageCrane crane, String reason);
 	
 	/**
 	 * Called when a tide has been successfully completed.
@@ -59,4 +71,12 @@ public interface CaptainHook {
 	 * @param duration Duration of the tide up until the failure occurred.
 	 */
 	void reportTideFailure(SalvageTide tide, Collection<SalvageVolume> success, Collection<SalvageVolume> failure, String message, Duration duration);
+	
+	/**
+	 * Called when the downtime budget of a container conflicts with its backup.
+	 *
+	 * @param tide   Tide during which the conflict occurred.
+	 * @param breach Details about the conflict and how it was handled.
+	 */
+	void reportDowntimeBreach(SalvageTide tide, DowntimeBreach breach);
 }
@@ -0,0 +1,33 @@
+package de.chrisliebaer.salvage.reporting;
+
+import de.chrisliebaer.salvage.entity.SalvageContainer;
+
+import java.time.Duration;
+
+/**
+ * Records a conflict between the downtime budget of a container and the (predicted) duration of its backup.
+ *
+ * @param container Container with the downtime budget.
+ * @param budget    Configured downtime budget.
+ * @param downtime  Predicted or measured downtime, depending on the outcome.
+ * @param outcome   How the conflict was handled.
+ */
+public record DowntimeBreach(SalvageContainer container, Duration budget, Duration downtime, Outcome outcome) {
+	
+	public enum Outcome {
+		/**
+		 * Predicted downtime exceeds budget, but the container had to be stopped or paused anyway, since there is no pre-command to fall back to.
+		 */
+		PREDICTED,
+		
+		/**
+		 * Predicted downtime exceeds budget, container state was not altered and only pre- and post-commands were run.
+		 */
+		AVOIDED,
+		
+		/**
+		 * Measured downtime exceeded budget.
+		 */
+		EXCEEDED
+	}
+}
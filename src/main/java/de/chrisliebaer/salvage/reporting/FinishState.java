@@ -3,5 +3,6 @@ package de.chrisliebaer.salvage.reporting;
 public enum FinishState {
 	SUCCESS,
 	FAILURE,
+	SKIPPED,
 	UNKNOWN
 }
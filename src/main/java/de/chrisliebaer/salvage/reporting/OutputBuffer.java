@@ -0,0 +1,236 @@
+package de.chrisliebaer.salvage.reporting;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Captures container output with a fixed memory footprint. Docker frames split and merge lines arbitrarily, so bytes are reassembled into lines before they are handed
+ * to a listener. Lines the listener doesn't consume are kept in a ring buffer, which overwrites the oldest output once full, so failure reports can include the most
+ * recent lines no matter how verbose a container is. Bytes are only decoded if a line is actually logged or reported.
+ */
+@Slf4j
+public class OutputBuffer {
+	
+	/**
+	 * Longer lines are truncated, the remainder is dropped until the next line starts.
+	 */
+	private static final int MAX_LINE_LENGTH = 8 * 1024;
+	
+	/**
+	 * Number of lines that may be logged per second, further lines are only counted.
+	 */
+	private static final int LOG_LINES_PER_SECOND = 50;
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+	
+	private static final byte[] TRUNCATED_MARKER = " [truncated]".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] LINE_BREAK = {'\n'};
+	
+	private final String name;
+	private final LineListener listener;
+	private final LongSupplier nanoTime;
+	
+	private final byte[] ring;
+	private int ringPosition;
+	private boolean wrapped;
+	
+	private final byte[] line = new byte[MAX_LINE_LENGTH];
+	private int lineLength;
+	private boolean truncated;
+	
+	private long logWindowStart;
+	private int logged;
+	private int suppressed;
+	
+	/**
+	 * @param name     Name of the output, used for logging.
+	 * @param capacity Number of bytes of output to keep.
+	 * @param listener Called for every complete line.
+	 */
+	public OutputBuffer(String name, int capacity, LineListener listener) {
+		this(name, capacity, listener, System::nanoTime);
+	}
+	
+	/**
+	 * @param name     Name of the output, used for logging.
+	 * @param capacity Number of bytes of output to keep.
+	 * @param listener Called for every complete line.
+	 * @param nanoTime Clock used to limit logged lines per second, in the same unit as {@link System#nanoTime()}.
+	 */
+	OutputBuffer(String name, int capacity, LineListener listener, LongSupplier nanoTime) {
+		this.name = name;
+		this.listener = listener;
+		this.nanoTime = nanoTime;
+		ring = new byte[capacity];
+		logWindowStart = nanoTime.getAsLong();
+	}
+	
+	/**
+	 * Appends raw output of a container.
+	 *
+	 * @param payload Payload of a single frame.
+	 */
+	public synchronized void append(byte[] payload) {
+		for (var b : payload) {
+			if (b == '\n') {
+				completeLine();
+			} else if (lineLength < MAX_LINE_LENGTH) {
+				line[lineLength++] = b;
+			} else {
+				truncated = true;
+			}
+		}
+	}
+	
+	/**
+	 * Completes the current line, even if it wasn't terminated yet. Should be called once the output has ended.
+	 */
+	public synchronized void flush() {
+		if (lineLength > 0)
+			completeLine();
+		
+		// summary is otherwise only logged once the next line arrives, which never happens
+		logSuppressed();
+	}
+	
+	/**
+	 * @param count Maximum number of lines to return.
+	 * @return The last lines of output, separated by line breaks, or an empty string if nothing has been captured.
+	 */
+	public synchronized String lastLines(int count) {
+		byte[] bytes;
+		if (wrapped) {
+			bytes = new byte[ring.length];
+			System.arraycopy(ring, ringPosition, bytes, 0, ring.length - ringPosition);
+			System.arraycopy(ring, 0, bytes, ring.length - ringPosition, ringPosition);
+		} else {
+			bytes = Arrays.copyOf(ring, ringPosition);
+		}
+		
+		var lines = new String(bytes, StandardCharsets.UTF_8).split("\n");
+		
+		// oldest line might have been partially overwritten
+		var first = wrapped ? 1 : 0;
+		var from = Math.max(first, lines.length - count);
+		return String.join("\n", Arrays.copyOfRange(lines, Math.min(from, lines.length), lines.length)).strip();
+	}
+	
+	private synchronized boolean permitLog() {
+		var now = nanoTime.getAsLong();
+		if (now - logWindowStart >= NANOS_PER_SECOND) {
+			logSuppressed();
+			logWindowStart = now;
+			logged = 0;
+		}
+		
+		if (logged < LOG_LINES_PER_SECOND) {
+			logged++;
+			return true;
+		}
+		suppressed++;
+		return false;
+	}
+	
+	private void logSuppressed() {
+		if (suppressed > 0)
+			log.debug("suppressed {} lines of output from {}", suppressed, name);
+		suppressed = 0;
+	}
+	
+	private void completeLine() {
+		var length = lineLength;
+		if (length > 0 && line[length - 1] == '\r')
+			length--;
+		lineLength = 0;
+		
+		var wasTruncated = truncated;
+		truncated = false;
+		
+		var current = new Line(line, length);
+		if (current.isBlank() || listener.onLine(current))
+			return;
+		
+		store(line, length);
+		if (wasTruncated)
+			store(TRUNCATED_MARKER, TRUNCATED_MARKER.length);
+		store(LINE_BREAK, LINE_BREAK.length);
+	}
+	
+	private void store(byte[] bytes, int length) {
+		// lines longer than the ring only keep their end
+		var offset = Math.max(0, length - ring.length);
+		while (offset < length) {
+			var chunk = Math.min(length - offset, ring.length - ringPosition);
+			System.arraycopy(bytes, offset, ring, ringPosition, chunk);
+			offset += chunk;
+			ringPosition += chunk;
+			if (ringPosition == ring.length) {
+				ringPosition = 0;
+				wrapped = true;
+			}
+		}
+	}
+	
+	/**
+	 * Receives complete lines of output.
+	 */
+	@FunctionalInterface
+	public interface LineListener {
+		
+		/**
+		 * @param line Line without its line break, only valid for the duration of the call.
+		 * @return {@code true} if the line has been consumed and should not be kept.
+		 */
+		boolean onLine(Line line);
+	}
+	
+	/**
+	 * View on a single line of output, which is only decoded on demand.
+	 */
+	public final class Line {
+		
+		private final byte[] bytes;
+		private final int length;
+		private String decoded;
+		
+		private Line(byte[] bytes, int length) {
+			this.bytes = bytes;
+			this.length = length;
+		}
+		
+		/**
+		 * Limits how many lines of this output are logged, so verbose containers can't flood the log. Suppressed lines are summarized once per second and once the
+		 * output has ended.
+		 *
+		 * @return {@code true} if the caller may log this line.
+		 */
+		public boolean permitLog() {
+			return OutputBuffer.this.permitLog();
+		}
+		
+		/**
+		 * @param prefix Prefix to check, compared on raw bytes, so lines don't need to be decoded.
+		 * @return {@code true} if the line starts with the given prefix.
+		 */
+		public boolean startsWith(byte[] prefix) {
+			return length >= prefix.length && Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length);
+		}
+		
+		private boolean isBlank() {
+			for (var i = 0; i < length; i++) {
+				if (!Character.isWhitespace(bytes[i]))
+					return false;
+			}
+			return true;
+		}
+		
+		@Override
+		public String toString() {
+			if (decoded == null)
+				decoded = new String(bytes, 0, length, StandardCharsets.UTF_8).strip();
+			return decoded;
+		}
+	}
+}
@@ -15,6 +15,10 @@ public class StopWatch {
 		start = Instant.now();
 	}
 	
+	public boolean isStarted() {
+		return start != null;
+	}
+	
 	public void stop() {
 		if (start == null)
 			throw new IllegalStateException("StopWatch has not been started");
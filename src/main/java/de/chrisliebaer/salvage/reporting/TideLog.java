@@ -5,9 +5,12 @@ import de.chrisliebaer.salvage.entity.SalvageTide;
 import de.chrisliebaer.salvage.entity.SalvageVolume;
 import lombok.Getter;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -24,7 +27,10 @@ public class TideLog {
 	
 	public record TideResult(FinishState state, String message) {}
 	
-	private final Map<SalvageVolume, VolumeLog> volumeLogs = new HashMap<>();
+	private final Map<Key, VolumeLog> volumeLogs = new LinkedHashMap<>();
+	private final Map<Key, VolumeLog> shardLogs = new HashMap<>();
+	private final List<DowntimeBreach> downtimeBreaches = new ArrayList<>();
+	private final List<ActionDecision> actionDecisions = new ArrayList<>();
 	
 	@Getter private final StopWatch stopWatch = new StopWatch();
 	@Getter private final SalvageTide tide;
@@ -39,23 +45,52 @@ public class TideLog {
 	}
 	
 	/**
-	 * Create a new volume log for the given volume. If a volume log already exists for the given volume, it will be returned.
+	 * Create a new volume log for the given volume and crane. If a volume log already exists for the given pair, it will be returned. Volumes backed up by multiple
+	 * cranes have one log per crane. Shards have their own log, which is aggregated into the log of the whole volume.
 	 *
 	 * @param volume Volume to create log for.
 	 * @param crane  Crane that will be used to back up the volume.
-	 * @return Volume log for the given volume.
+	 * @return Volume log for the given volume and crane.
 	 */
 	public VolumeLog getVolumeLog(SalvageVolume volume, SalvageCrane crane) {
-		var volumeLog = volumeLogs.computeIfAbsent(volume, v -> new VolumeLog(v, crane, hook));
-		if (!volumeLog.crane().equals(crane))
-			throw new IllegalArgumentException("Volume log for volume '" + volume + "' already exists with different crane '" + volumeLog.crane() + "'");
-		return volumeLog;
+		if (volume.shard().isPresent()) {
+			var parent = getVolumeLog(volume.whole(), crane);
+			return shardLogs.computeIfAbsent(new Key(volume, crane), k -> new VolumeLog(volume, crane, parent));
+		}
+		return volumeLogs.computeIfAbsent(new Key(volume, crane), k -> new VolumeLog(volume, crane, hook));
 	}
 	
 	public void start() {
 		stopWatch.start();
 	}
 	
+	/**
+	 * Records a conflict between the downtime budget of a container and its backup. Breaches are reported right away, but don't fail the tide.
+	 *
+	 * @param breach The breach to record.
+	 */
+	public synchronized void downtimeBreach(DowntimeBreach breach) {
+		downtimeBreaches.add(breach);
+		hook.reportDowntimeBreach(tide, breach);
+	}
+	
+	public synchronized List<DowntimeBreach> downtimeBreaches() {
+		return List.copyOf(downtimeBreaches);
+	}
+	
+	/**
+	 * Records the outcome of an automatically picked container action.
+	 *
+	 * @param decision The decision and its outcome.
+	 */
+	public synchronized void actionDecision(ActionDecision decision) {
+		actionDecisions.add(decision);
+	}
+	
+	public synchronized List<ActionDecision> actionDecisions() {
+		return List.copyOf(actionDecisions);
+	}
+	
 	public void success() {
 		stopWatch.stop();
 		if (tideState != FinishState.UNKNOWN)
@@ -83,10 +118,20 @@ public class TideLog {
 	public TideResult tideResult() {
 		// if all volumes are successful, the tide state is reported, otherwise the volume dictates the tide state
 		return findMostSevereVolumeLog()
-				.map(volumeLog -> new TideResult(FinishState.FAILURE, "volume backup '" + volumeLog.volume().name() + "' reported: " + volumeLog.message()))
+				.map(volumeLog -> new TideResult(FinishState.FAILURE,
+						"volume backup '" + volumeLog.volume().name() + "' on crane '" + volumeLog.crane().name() + "' reported: " + volumeLog.message()))
 				.orElse(new TideResult(tideState, message));
 	}
 	
+	/**
+	 * @param volume Volume to check.
+	 * @return {@code true} if the volume has been backed up successfully by all of its cranes.
+	 */
+	public boolean isBackedUp(SalvageVolume volume) {
+		var logs = volumeLogs.values().stream().filter(volumeLog -> volumeLog.volume().equals(volume)).toList();
+		return !logs.isEmpty() && logs.stream().allMatch(volumeLog -> volumeLog.state() == FinishState.SUCCESS);
+	}
+	
 	public Collection<VolumeLog> volumeLogs() {
 		return Collections.unmodifiableCollection(volumeLogs.values());
 	}
@@ -112,4 +157,6 @@ public class TideLog {
 		
 		return mostSevereLog;
 	}
+	
+	private record Key(SalvageVolume volume, SalvageCrane crane) {}
 }
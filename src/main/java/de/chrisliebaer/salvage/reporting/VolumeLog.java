@@ -4,29 +4,98 @@ import de.chrisliebaer.salvage.entity.SalvageCrane;
 import de.chrisliebaer.salvage.entity.SalvageVolume;
 import lombok.Getter;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
 public class VolumeLog {
 	
+	/**
+	 * Number of output lines of the crane included in failure reports.
+	 */
+	private static final int FAILURE_OUTPUT_LINES = 10;
+	
 	@Getter private final SalvageVolume volume;
 	@Getter private final SalvageCrane crane;
 	private final CaptainHook hook;
 	
+	/**
+	 * Log of the whole volume, if this log only covers a single shard. Shard logs report to their parent instead of the hook.
+	 */
+	private final VolumeLog parent;
+	private final List<VolumeLog> shards = new ArrayList<>();
+	private int pendingShards;
+	
 	@Getter private final StopWatch stopWatch = new StopWatch();
 	@Getter private String message = "Volume backup has never recorded any activity.";
 	
 	@Getter private FinishState state = FinishState.UNKNOWN;
 	
+	private volatile OutputBuffer output;
+	private volatile VolumeProgress progress;
+	
 	public VolumeLog(SalvageVolume volume, SalvageCrane crane, CaptainHook hook) {
 		this.volume = volume;
 		this.crane = crane;
 		this.hook = hook;
+		parent = null;
+	}
+	
+	/**
+	 * Creates a log for a single shard of a volume. The log of the whole volume finishes once all of its shards have finished, and fails if any shard failed.
+	 *
+	 * @param shard  Shard covered by this log.
+	 * @param parent Log of the whole volume.
+	 */
+	public VolumeLog(SalvageVolume shard, SalvageCrane crane, VolumeLog parent) {
+		this.volume = shard;
+		this.crane = crane;
+		this.hook = parent.hook;
+		this.parent = parent;
+		parent.addShard(this);
+	}
+	
+	/**
+	 * Sets the output of the crane backing up this volume, which is included in failure reports. Replaces output of previous attempts.
+	 */
+	public void output(OutputBuffer output) {
+		this.output = output;
 	}
 	
-	public void log(String message) {
-		this.message = message;
+	/**
+	 * Sets the progress reported by the crane backing up this volume. Replaces progress of previous attempts.
+	 */
+	public void progress(VolumeProgress progress) {
+		this.progress = progress;
+	}
+	
+	/**
+	 * @return Progress as of the last report of the crane, empty if the crane never reported progress.
+	 */
+	public Optional<VolumeProgress.Summary> progress() {
+		List<VolumeLog> shards;
+		synchronized (this) {
+			shards = List.copyOf(this.shards);
+		}
+		if (!shards.isEmpty()) {
+			var summaries = shards.stream().flatMap(shard -> shard.progress().stream()).toList();
+			return summaries.isEmpty() ? Optional.empty() : Optional.of(VolumeProgress.Summary.combine(summaries));
+		}
+		
+		var progress = this.progress;
+		return progress == null ? Optional.empty() : progress.summary();
 	}
 	
 	public void start() {
 		stopWatch.start();
+		
+		// whole volume is running as soon as its first shard started
+		if (parent != null) {
+			synchronized (parent) {
+				if (!parent.stopWatch.isStarted())
+					parent.start();
+			}
+		}
 	}
 	
 	public void success() {
@@ -35,7 +104,10 @@ public class VolumeLog {
 			throw new IllegalStateException("Volume state has already been set to '" + state + "'");
 		state = FinishState.SUCCESS;
 		
-		hook.reportVolumeSuccess(volume, crane, stopWatch.duration());
+		if (parent != null)
+			parent.shardFinished();
+		else
+			hook.reportVolumeSuccess(volume, crane, stopWatch.duration(), progress());
 	}
 	
 	public void failure(String message) {
@@ -44,13 +116,59 @@ public class VolumeLog {
 			throw new IllegalStateException("Volume state has already been set to '" + state + "'");
 		
 		state = FinishState.FAILURE;
-		this.message = message;
 		
-		hook.reportVolumeFailure(volume, crane, message, stopWatch.duration());
+		// message alone rarely explains why a crane failed
+		var tail = output == null ? "" : output.lastLines(FAILURE_OUTPUT_LINES);
+		this.message = tail.isEmpty() ? message : message + "\n" + tail;
+		
+		if (parent != null)
+			parent.shardFinished();
+		else
+			hook.reportVolumeFailure(volume, crane, this.message, stopWatch.duration(), progress());
 	}
 	
 	public void failure(Throwable e) {
 		stopWatch.stop();
 		failure(e.getMessage());
 	}
+	
+	/**
+	 * Marks the volume as skipped, either without it ever being started, or because its run has been cut short without a result.
+	 *
+	 * @param reason Reason for skipping the volume.
+	 */
+	public void skipped(String reason) {
+		if (state != FinishState.UNKNOWN)
+			throw new IllegalStateException("Volume state has already been set to '" + state + "'");
+		
+		state = FinishState.SKIPPED;
+		message = reason;
+		hook.reportVolumeSkipped(volume, crane, reason);
+	}
+	
+	private synchronized void addShard(VolumeLog shard) {
+		if (shards.isEmpty())
+			pendingShards = shard.volume.shard().orElseThrow().count();
+		shards.add(shard);
+	}
+	
+	private void shardFinished() {
+		List<VolumeLog> failed;
+		synchronized (this) {
+			if (--pendingShards > 0)
+				return;
+			failed = shards.stream().filter(shard -> shard.state == FinishState.FAILURE).toList();
+		}
+		
+		if (failed.isEmpty()) {
+			success();
+			return;
+		}
+		var messages = new ArrayList<String>();
+		for (var shard : failed) {
+			var index = shard.volume.shard().orElseThrow();
+			messages.add("shard " + (index.index() + 1) + " of " + index.count() + ": " + shard.message);
+		}
+		failure(String.join("\n", messages));
+	}
 }
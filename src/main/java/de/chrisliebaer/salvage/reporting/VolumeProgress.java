@@ -0,0 +1,126 @@
+package de.chrisliebaer.salvage.reporting;
+
+import de.chrisliebaer.salvage.SalvageMain;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tracks progress reported by a crane for a single volume. Cranes report counters as totals so far, which allows throughput and remaining time to be derived without
+ * the crane having to know about either. All values are optional, since cranes are free to only report what their backup software exposes.
+ */
+public class VolumeProgress {
+	
+	private Instant startedAt;
+	private Instant updatedAt;
+	private String phase;
+	private long bytesProcessed;
+	private long bytesTotal;
+	private long filesProcessed;
+	private long bytesUploaded;
+	private boolean reported;
+	
+	/**
+	 * Marks the start of the crane, from which throughput is measured.
+	 */
+	public synchronized void start(Instant now) {
+		startedAt = now;
+	}
+	
+	/**
+	 * Applies a progress report of the crane. Missing values keep their previous value.
+	 */
+	public synchronized void update(Optional<String> phase, Optional<Long> bytesProcessed, Optional<Long> bytesTotal, Optional<Long> filesProcessed,
+									Optional<Long> bytesUploaded, Instant now) {
+		phase.ifPresent(p -> this.phase = p);
+		bytesProcessed.ifPresent(b -> this.bytesProcessed = b);
+		bytesTotal.ifPresent(b -> this.bytesTotal = b);
+		filesProcessed.ifPresent(f -> this.filesProcessed = f);
+		bytesUploaded.ifPresent(b -> this.bytesUploaded = b);
+		if (startedAt == null)
+			startedAt = now;
+		updatedAt = now;
+		reported = true;
+	}
+	
+	/**
+	 * @return Progress as of the last report, empty if the crane never reported progress.
+	 */
+	public synchronized Optional<Summary> summary() {
+		if (!reported)
+			return Optional.empty();
+		return Optional.of(new Summary(Optional.ofNullable(phase), bytesProcessed, bytesTotal, filesProcessed, bytesUploaded, Duration.between(startedAt, updatedAt)));
+	}
+	
+	/**
+	 * @param phase          Phase the crane reported last, such as {@code scan} or {@code upload}.
+	 * @param bytesProcessed Number of bytes read from the volume.
+	 * @param bytesTotal     Number of bytes the crane expects to read, zero if unknown.
+	 * @param filesProcessed Number of files read from the volume.
+	 * @param bytesUploaded  Number of bytes sent to the backup repository, usually less than processed due to compression and deduplication.
+	 * @param elapsed        Time between the start of the crane and the last report.
+	 */
+	public record Summary(Optional<String> phase, long bytesProcessed, long bytesTotal, long filesProcessed, long bytesUploaded, Duration elapsed) {
+		
+		/**
+		 * Combines the progress of cranes working on the same volume at the same time, such as shards. Counters are summed up, while the phase is only kept if all
+		 * cranes agree on it.
+		 *
+		 * @param summaries Summaries to combine, must not be empty.
+		 */
+		public static Summary combine(List<Summary> summaries) {
+			var phase = summaries.getFirst().phase();
+			long bytesProcessed = 0;
+			long bytesTotal = 0;
+			long filesProcessed = 0;
+			long bytesUploaded = 0;
+			var elapsed = Duration.ZERO;
+			for (var summary : summaries) {
+				if (!summary.phase().equals(phase))
+					phase = Optional.empty();
+				bytesProcessed += summary.bytesProcessed();
+				bytesTotal += summary.bytesTotal();
+				filesProcessed += summary.filesProcessed();
+				bytesUploaded += summary.bytesUploaded();
+				if (summary.elapsed().compareTo(elapsed) > 0)
+					elapsed = summary.elapsed();
+			}
+			return new Summary(phase, bytesProcessed, bytesTotal, filesProcessed, bytesUploaded, elapsed);
+		}
+		
+		/**
+		 * @return Bytes processed per second, empty if no time has passed yet.
+		 */
+		public Optional<Double> throughput() {
+			if (elapsed.isZero() || elapsed.isNegative())
+				return Optional.empty();
+			return Optional.of(bytesProcessed / (elapsed.toNanos() / 1e9));
+		}
+		
+		/**
+		 * @return Predicted time until all bytes have been processed, empty if the crane didn't report the total amount or hasn't made any progress yet.
+		 */
+		public Optional<Duration> eta() {
+			if (bytesTotal <= 0)
+				return Optional.empty();
+			return throughput()
+					.filter(t -> t > 0)
+					.map(t -> Duration.ofSeconds(Math.round(Math.max(0, bytesTotal - bytesProcessed) / t)));
+		}
+		
+		@Override
+		public String toString() {
+			var sb = new StringBuilder();
+			phase.ifPresent(p -> sb.append(p).append(": "));
+			sb.append(SalvageMain.formatSize(bytesProcessed));
+			if (bytesTotal > 0)
+				sb.append(" of ").append(SalvageMain.formatSize(bytesTotal));
+			sb.append(", ").append(filesProcessed).append(" files, ").append(SalvageMain.formatSize(bytesUploaded)).append(" uploaded");
+			throughput().ifPresent(t -> sb.append(", ").append(SalvageMain.formatSize(t)).append("/s"));
+			eta().ifPresent(eta -> sb.append(", ").append(SalvageMain.formatDuration(eta)).append(" remaining"));
+			return sb.toString();
+		}
+	}
+}
@@ -20,6 +20,7 @@ import java.time.Duration;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
@@ -32,18 +33,22 @@ public class WebhookReporter implements CaptainHook {
 	
 	private static final String TEMPLATE_VOLUME_SUCCESS;
 	private static final String TEMPLATE_VOLUME_FAILURE;
+	private static final String TEMPLATE_VOLUME_SKIPPED;
 	private static final String TEMPLATE_TIDE_SUCCESS;
 	private static final String TEMPLATE_TIDE_FAILURE;
 	private static final String TEMPLATE_TIDE_FAILURE_WITH_VOLUMES;
+	private static final String TEMPLATE_DOWNTIME_BREACH;
 	
 	static {
 		try {
 			var cl = WebhookReporter.class.getClassLoader();
 			TEMPLATE_VOLUME_SUCCESS = IOUtil.toString(cl.getResourceAsStream("report-templates/discordVolumeSuccess.json"));
 			TEMPLATE_VOLUME_FAILURE = IOUtil.toString(cl.getResourceAsStream("report-templates/discordVolumeFailure.json"));
+			TEMPLATE_VOLUME_SKIPPED = IOUtil.toString(cl.getResourceAsStream("report-templates/discordVolumeSkipped.json"));
 			TEMPLATE_TIDE_SUCCESS = IOUtil.toString(cl.getResourceAsStream("report-templates/discordTideSuccess.json"));
 			TEMPLATE_TIDE_FAILURE = IOUtil.toString(cl.getResourceAsStream("report-templates/discordTideFailure.json"));
 			TEMPLATE_TIDE_FAILURE_WITH_VOLUMES = IOUtil.toString(cl.getResourceAsStream("report-templates/discordTideFailureWithVolumes.json"));
+			TEMPLATE_DOWNTIME_BREACH = IOUtil.toString(cl.getResourceAsStream("report-templates/discordDowntimeBreach.json"));
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to load report templates", e);
 		}
@@ -61,6 +66,12 @@ public class WebhookReporter implements CaptainHook {
 		this.client = client;
 	}
 	
+	private static String formatThroughput(Optional<VolumeProgress.Summary> progress) {
+		return progress.flatMap(VolumeProgress.Summary::throughput)
+				.map(t -> SalvageMain.formatSize(t) + "/s")
+				.orElse("unknown");
+	}
+	
 	private Map<String, String> defaultMap() {
 		var map = new HashMap<String, String>();
 		map.put("host", host);
@@ -69,12 +80,13 @@ public class WebhookReporter implements CaptainHook {
 	}
 	
 	@Override
-	public void reportVolumeSuccess(SalvageVolume volume, SalvageCrane crane, Duration duration) {
+	public void reportVolumeSuccess(SalvageVolume volume, SalvageCrane crane, Duration duration, Optional<VolumeProgress.Summary> progress) {
 		store.volumeSuccess().ifPresent(uri -> {
 			var map = defaultMap();
 			map.put("volume", volume.name());
 			map.put("crane", crane.name());
 			map.put("duration", SalvageMain.formatDuration(duration));
+			map.put("throughput", formatThroughput(progress));
 			
 			send(map, uri, TEMPLATE_VOLUME_SUCCESS)
 					.exceptionally(e -> {
@@ -85,12 +97,13 @@ public class WebhookReporter implements CaptainHook {
 	}
 	
 	@Override
-	public void reportVolumeFailure(SalvageVolume volume, SalvageCrane crane, String message, Duration duration) {
+	public void reportVolumeFailure(SalvageVolume volume, SalvageCrane crane, String message, Duration duration, Optional<VolumeProgress.Summary> progress) {
 		store.volumeFailure().ifPresent(uri -> {
 			var map = defaultMap();
 			map.put("volume", volume.name());
 			map.put("crane", crane.name());
 			map.put("duration", SalvageMain.formatDuration(duration));
+			map.put("throughput", formatThroughput(progress));
 			map.put("exception", StringUtils.abbreviate(message, MAX_EXCEPTION_LENGTH));
 			
 			send(map, uri, TEMPLATE_VOLUME_FAILURE)
@@ -101,6 +114,22 @@ public class WebhookReporter implements CaptainHook {
 		});
 	}
 	
+	@Override
+	public void reportVolumeSkipped(SalvageVolume volume, SalvageCrane crane, String reason) {
+		store.volumeSkipped().ifPresent(uri -> {
+			var map = defaultMap();
+			map.put("volume", volume.name());
+			map.put("crane", crane.name());
+			map.put("reason", reason);
+			
+			send(map, uri, TEMPLATE_VOLUME_SKIPPED)
+					.exceptionally(e -> {
+						log.error("Failed to send webhook for skipped backup of volume '{}'", volume.name(), e);
+						return null;
+					});
+		});
+	}
+	
 	
 	@Override
 	public void reportTideSuccess(SalvageTide tide, Collection<SalvageVolume> volumes, Duration duration) {
@@ -163,6 +192,28 @@ public class WebhookReporter implements CaptainHook {
 		
 	}
 	
+	@Override
+	public void reportDowntimeBreach(SalvageTide tide, DowntimeBreach breach) {
+		store.downtimeBreach().ifPresent(uri -> {
+			var map = defaultMap();
+			map.put("tide", tide.name());
+			map.put("container", breach.container().name());
+			map.put("budget", SalvageMain.formatDuration(breach.budget()));
+			map.put("downtime", SalvageMain.formatDuration(breach.downtime()));
+			map.put("description", switch (breach.outcome()) {
+				case PREDICTED -> "Predicted downtime exceeds budget, but container has no commands to fall back to and was stopped anyway.";
+				case AVOIDED -> "Predicted downtime exceeds budget, container was left running and only pre- and post-commands were run.";
+				case EXCEEDED -> "Measured downtime exceeded budget.";
+			});
+			
+			send(map, uri, TEMPLATE_DOWNTIME_BREACH)
+					.exceptionally(e -> {
+						log.error("Failed to send webhook for downtime breach of container '{}'", breach.container().name(), e);
+						return null;
+					});
+		});
+	}
+	
 	private CompletableFuture<HttpResponse<Void>> send(Map<String, String> map, URI url, String template) {
 		HttpRequest req;
 		if (store.method() == ReportingUrlStore.Method.GET) {
@@ -0,0 +1,123 @@
+package de.chrisliebaer.salvage;
+
+import de.chrisliebaer.salvage.entity.SalvageCrane;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CranePoolTest {
+	
+	private static CranePool pool(int maxConcurrent) {
+		var crane = SalvageCrane.fromLabels("crane", "salvage.crane.crane", Map.of(
+				"salvage.crane.crane.image", "crane",
+				"salvage.crane.crane.maxConcurrent", String.valueOf(maxConcurrent)));
+		return new CranePool(crane);
+	}
+	
+	@Test
+	void grantsImmediatelyWhileSlotsAreFree() {
+		var pool = pool(2);
+		var granted = new ArrayList<String>();
+		var client = pool.register("a", () -> granted.add("a"));
+		
+		client.request();
+		client.request();
+		client.request();
+		
+		assertEquals(List.of("a", "a"), granted);
+		assertEquals(2, client.grants());
+	}
+	
+	@Test
+	void alternatesBetweenWaitingClients() {
+		var pool = pool(1);
+		var granted = new ArrayList<String>();
+		var first = pool.register("first", () -> granted.add("first"));
+		var second = pool.register("second", () -> granted.add("second"));
+		
+		for (int i = 0; i < 3; i++)
+			first.request();
+		for (int i = 0; i < 2; i++)
+			second.request();
+		for (int i = 0; i < 4; i++)
+			pool.release();
+		
+		assertEquals(List.of("first", "first", "second", "first", "second"), granted);
+		assertEquals(3, first.grants());
+		assertEquals(2, second.grants());
+	}
+	
+	@Test
+	void closeWithdrawsOutstandingRequests() {
+		var pool = pool(1);
+		var granted = new ArrayList<String>();
+		var first = pool.register("first", () -> granted.add("first"));
+		var second = pool.register("second", () -> granted.add("second"));
+		
+		first.request();
+		first.request();
+		second.request();
+		first.close();
+		pool.release();
+		
+		// the slot granted before closing is unaffected and passed on to the remaining client
+		assertEquals(List.of("first", "second"), granted);
+		assertEquals(1, pool.metrics().inUse());
+		assertEquals(0, pool.metrics().outstanding());
+		
+		pool.release();
+		assertEquals(0, pool.metrics().inUse());
+	}
+	
+	@Test
+	void releaseWithoutGrantedSlotFails() {
+		var pool = pool(1);
+		var client = pool.register("client", () -> {});
+		
+		assertThrows(IllegalStateException.class, pool::release);
+		
+		client.request();
+		pool.release();
+		assertThrows(IllegalStateException.class, pool::release);
+	}
+	
+	@Test
+	void metricsTrackSlotsAndRequests() {
+		var pool = pool(2);
+		var client = pool.register("client", () -> {});
+		
+		assertEquals(new CranePool.Metrics(2, 0, 0, 0, Duration.ZERO, Duration.ZERO), pool.metrics());
+		
+		for (int i = 0; i < 5; i++)
+			client.request();
+		var metrics = pool.metrics();
+		assertEquals(2, metrics.capacity());
+		assertEquals(2, metrics.inUse());
+		assertEquals(3, metrics.outstanding());
+		assertEquals(2, metrics.grants());
+		
+		pool.release();
+		metrics = pool.metrics();
+		assertEquals(2, metrics.inUse());
+		assertEquals(2, metrics.outstanding());
+		assertEquals(3, metrics.grants());
+		
+		// waiting times depend on the wall clock, but must add up across all grants
+		assertFalse(metrics.maxWait().isNegative());
+		assertTrue(metrics.maxWait().compareTo(metrics.totalWait()) <= 0);
+		assertEquals(client.waited(), metrics.totalWait());
+	}
+	
+	@Test
+	void rejectsCraneWithoutCapacity() {
+		assertThrows(IllegalArgumentException.class, () -> pool(0));
+	}
+}
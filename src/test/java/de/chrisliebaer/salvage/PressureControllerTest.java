@@ -0,0 +1,107 @@
+package de.chrisliebaer.salvage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PressureControllerTest {
+	
+	private static final double THRESHOLD = 10.0;
+	
+	@TempDir
+	Path directory;
+	
+	private void pressure(double io, double cpu) throws IOException {
+		Files.writeString(directory.resolve("io"), psi(io));
+		Files.writeString(directory.resolve("cpu"), psi(cpu));
+	}
+	
+	private static String psi(double avg10) {
+		return String.format(Locale.ROOT, "some avg10=%.2f avg60=0.00 avg300=0.00 total=0\nfull avg10=0.00 avg60=0.00 avg300=0.00 total=0\n", avg10);
+	}
+	
+	private PressureController controller(int ceiling) {
+		return new PressureController(directory, THRESHOLD, Duration.ZERO, ceiling);
+	}
+	
+	@Test
+	void startsAtCeiling() {
+		assertEquals(8, controller(8).limit());
+	}
+	
+	@Test
+	void pressureHalvesRunningBackups() throws IOException {
+		var controller = controller(8);
+		pressure(50, 0);
+		
+		assertTrue(controller.update(8));
+		assertEquals(4, controller.limit());
+		assertTrue(controller.update(4));
+		assertEquals(2, controller.limit());
+		assertTrue(controller.update(2));
+		assertEquals(1, controller.limit());
+		
+		// at least one backup is always allowed
+		assertFalse(controller.update(1));
+		assertEquals(1, controller.limit());
+	}
+	
+	@Test
+	void decreaseIsRelativeToRunningBackups() throws IOException {
+		var controller = controller(Integer.MAX_VALUE);
+		pressure(0, 50);
+		
+		controller.update(6);
+		assertEquals(3, controller.limit());
+	}
+	
+	@Test
+	void lowPressureAddsOneSlotOnlyIfAllSlotsAreUsed() throws IOException {
+		var controller = controller(8);
+		pressure(50, 50);
+		controller.update(8);
+		assertEquals(4, controller.limit());
+		
+		pressure(1, 1);
+		assertFalse(controller.update(2));
+		assertEquals(4, controller.limit());
+		assertTrue(controller.update(4));
+		assertEquals(5, controller.limit());
+	}
+	
+	@Test
+	void limitNeverExceedsCeiling() throws IOException {
+		var controller = controller(2);
+		pressure(0, 0);
+		
+		assertFalse(controller.update(2));
+		assertEquals(2, controller.limit());
+	}
+	
+	@Test
+	void missingPressureInformationKeepsLimit() {
+		var controller = controller(4);
+		
+		assertFalse(controller.update(4));
+		assertEquals(4, controller.limit());
+	}
+	
+	@Test
+	void limitIsOnlyAdjustedOncePerInterval() throws IOException {
+		var controller = new PressureController(directory, THRESHOLD, Duration.ofHours(1), 8);
+		pressure(50, 50);
+		
+		assertTrue(controller.update(8));
+		assertFalse(controller.update(4));
+		assertEquals(4, controller.limit());
+	}
+}
@@ -0,0 +1,57 @@
+package de.chrisliebaer.salvage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardPlannerTest {
+	
+	private static ShardPlanner.Entry entry(String name, long kib) {
+		return new ShardPlanner.Entry(name, kib);
+	}
+	
+	@Test
+	void assignsLargestEntriesToSmallestPart() {
+		var parts = ShardPlanner.partition(List.of(
+				entry("small", 1),
+				entry("large", 10),
+				entry("medium", 6),
+				entry("other", 5)), 2);
+		
+		assertEquals(List.of("large", "small"), parts.get(0).entries());
+		assertEquals(11, parts.get(0).kib());
+		assertEquals(List.of("medium", "other"), parts.get(1).entries());
+		assertEquals(11, parts.get(1).kib());
+	}
+	
+	@Test
+	void coversEveryEntryExactlyOnce() {
+		var entries = List.of(entry("a", 7), entry("b", 3), entry("c", 3), entry("d", 2), entry("e", 2), entry("f", 1));
+		var parts = ShardPlanner.partition(entries, 3);
+		
+		assertEquals(3, parts.size());
+		var names = parts.stream().flatMap(part -> part.entries().stream()).sorted().toList();
+		assertEquals(List.of("a", "b", "c", "d", "e", "f"), names);
+		assertEquals(18, parts.stream().mapToLong(ShardPlanner.Part::kib).sum());
+	}
+	
+	@Test
+	void dominatingEntryGetsItsOwnPart() {
+		var parts = ShardPlanner.partition(List.of(entry("huge", 100), entry("a", 1), entry("b", 1), entry("c", 1)), 2);
+		
+		assertEquals(List.of("huge"), parts.get(0).entries());
+		assertEquals(List.of("a", "b", "c"), parts.get(1).entries());
+	}
+	
+	@Test
+	void surplusPartsStayEmpty() {
+		var parts = ShardPlanner.partition(List.of(entry("a", 1)), 3);
+		
+		assertEquals(List.of("a"), parts.get(0).entries());
+		assertTrue(parts.get(1).entries().isEmpty());
+		assertTrue(parts.get(2).entries().isEmpty());
+	}
+}
@@ -0,0 +1,134 @@
+package de.chrisliebaer.salvage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskScopeTest {
+	
+	@Test
+	void joinWaitsForAllTasks() {
+		var finished = new AtomicInteger();
+		var scope = new TaskScope("test");
+		for (int i = 0; i < 10; i++) {
+			scope.fork(() -> {
+				sleep(50);
+				finished.incrementAndGet();
+			});
+		}
+		scope.join();
+		
+		assertEquals(10, finished.get());
+	}
+	
+	@Test
+	void cancelInterruptsRunningTasks() throws InterruptedException {
+		var started = new CountDownLatch(1);
+		var interrupted = new AtomicBoolean();
+		var scope = new TaskScope("test");
+		scope.fork(() -> {
+			started.countDown();
+			try {
+				Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+			} catch (InterruptedException e) {
+				interrupted.set(true);
+			}
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		
+		scope.cancel();
+		scope.join();
+		assertTrue(interrupted.get());
+	}
+	
+	@Test
+	void cancelledScopeRejectsNewTasks() {
+		var scope = new TaskScope("test");
+		scope.cancel();
+		
+		assertThrows(IllegalStateException.class, () -> scope.fork(() -> {}));
+	}
+	
+	@Test
+	void closeCancelsAndWaitsForTasks() throws InterruptedException {
+		var started = new CountDownLatch(1);
+		var terminated = new AtomicBoolean();
+		try (var scope = new TaskScope("test")) {
+			scope.fork(() -> {
+				started.countDown();
+				try {
+					Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+				} catch (InterruptedException ignore) {
+					// expected, scope is closed
+				}
+				sleep(50);
+				terminated.set(true);
+			});
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+		}
+		assertTrue(terminated.get());
+	}
+	
+	@Test
+	void joinDefersInterruptUntilTasksTerminated() throws InterruptedException {
+		var release = new CountDownLatch(1);
+		var finished = new AtomicBoolean();
+		var scope = new TaskScope("test");
+		scope.fork(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException ignore) {
+				// tasks of a scope that isn't cancelled are never interrupted
+			}
+			finished.set(true);
+		});
+		
+		var finishedOnReturn = new AtomicBoolean();
+		var interruptedOnReturn = new AtomicBoolean();
+		var joiner = Thread.ofPlatform().start(() -> {
+			scope.join();
+			finishedOnReturn.set(finished.get());
+			interruptedOnReturn.set(Thread.interrupted());
+		});
+		
+		// the task is still blocked, so the joining thread can only be waiting inside join when it is interrupted
+		while (joiner.getState() != Thread.State.TIMED_WAITING)
+			Thread.onSpinWait();
+		joiner.interrupt();
+		release.countDown();
+		joiner.join();
+		
+		assertTrue(finishedOnReturn.get());
+		assertTrue(interruptedOnReturn.get());
+	}
+	
+	@Test
+	void failingTasksDontAffectOtherTasks() {
+		var finished = new AtomicBoolean();
+		var scope = new TaskScope("test");
+		scope.fork(() -> {
+			throw new IllegalStateException("expected");
+		});
+		scope.fork(() -> finished.set(true));
+		scope.join();
+		
+		assertTrue(finished.get());
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+	
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
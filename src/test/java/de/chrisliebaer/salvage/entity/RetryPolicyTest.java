@@ -0,0 +1,84 @@
+package de.chrisliebaer.salvage.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+	
+	private static final String PREFIX = "salvage.cranes.restic";
+	
+	@Test
+	void noRetriesOnceAttemptsAreUsedUp() {
+		var policy = new RetryPolicy(3, Duration.ofSeconds(1), Set.of());
+		
+		assertTrue(policy.shouldRetry(1, Optional.of(1)));
+		assertTrue(policy.shouldRetry(2, Optional.of(1)));
+		assertFalse(policy.shouldRetry(3, Optional.of(1)));
+	}
+	
+	@Test
+	void everyFailureIsRetriedWithoutExitCodes() {
+		var policy = new RetryPolicy(2, Duration.ofSeconds(1), Set.of());
+		
+		assertTrue(policy.shouldRetry(1, Optional.of(42)));
+		assertTrue(policy.shouldRetry(1, Optional.empty()));
+	}
+	
+	@Test
+	void onlyListedExitCodesAreRetried() {
+		var policy = new RetryPolicy(2, Duration.ofSeconds(1), Set.of(3, 11));
+		
+		assertTrue(policy.shouldRetry(1, Optional.of(11)));
+		assertFalse(policy.shouldRetry(1, Optional.of(1)));
+		
+		// crane didn't exit on its own, so the failure can't be considered transient
+		assertFalse(policy.shouldRetry(1, Optional.empty()));
+	}
+	
+	@Test
+	void backoffDoublesForEveryRetry() {
+		var policy = new RetryPolicy(5, Duration.ofSeconds(10), Set.of());
+		
+		assertEquals(Duration.ofSeconds(10), policy.backoff(1));
+		assertEquals(Duration.ofSeconds(20), policy.backoff(2));
+		assertEquals(Duration.ofSeconds(40), policy.backoff(3));
+	}
+	
+	@Test
+	void defaultsToSingleAttempt() {
+		var policy = RetryPolicy.fromLabels("restic", PREFIX, Map.of());
+		
+		assertEquals(1, policy.attempts());
+		assertEquals(Duration.ofSeconds(30), policy.backoff());
+		assertTrue(policy.exitCodes().isEmpty());
+		assertFalse(policy.shouldRetry(1, Optional.of(1)));
+	}
+	
+	@Test
+	void parsesLabels() {
+		var policy = RetryPolicy.fromLabels("restic", PREFIX, Map.of(
+				PREFIX + ".retry.attempts", "4",
+				PREFIX + ".retry.backoff", "2m",
+				PREFIX + ".retry.exitCodes", "3, 11,,"));
+		
+		assertEquals(4, policy.attempts());
+		assertEquals(Duration.ofMinutes(2), policy.backoff());
+		assertEquals(Set.of(3, 11), policy.exitCodes());
+	}
+	
+	@Test
+	void rejectsInvalidLabels() {
+		assertThrows(IllegalArgumentException.class, () -> RetryPolicy.fromLabels("restic", PREFIX, Map.of(PREFIX + ".retry.attempts", "0")));
+		assertThrows(IllegalArgumentException.class, () -> RetryPolicy.fromLabels("restic", PREFIX, Map.of(PREFIX + ".retry.attempts", "many")));
+		assertThrows(IllegalArgumentException.class, () -> RetryPolicy.fromLabels("restic", PREFIX, Map.of(PREFIX + ".retry.exitCodes", "3,x")));
+	}
+}
@@ -0,0 +1,87 @@
+package de.chrisliebaer.salvage.grouping;
+
+import de.chrisliebaer.salvage.entity.ExitCodeBehaviour;
+import de.chrisliebaer.salvage.entity.SalvageContainer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ContainerWavesTest {
+	
+	private static SalvageContainer container(String project, String service, String... dependsOn) {
+		return new SalvageContainer(project + "-" + service, project + "-" + service, Optional.of(project), Optional.of(service), Set.of(dependsOn), List.of(),
+				SalvageContainer.ContainerAction.STOP, Optional.empty(), Optional.empty(), new ExitCodeBehaviour.FailIfNonZero(), Optional.empty(), Duration.ZERO);
+	}
+	
+	@Test
+	void dependenciesStartFirst() {
+		var db = container("app", "db");
+		var cache = container("app", "cache");
+		var web = container("app", "web", "db", "cache");
+		var proxy = container("app", "proxy", "web");
+		
+		var waves = ContainerWaves.startOrder(List.of(proxy, web, cache, db));
+		
+		assertEquals(List.of(List.of(cache, db), List.of(web), List.of(proxy)), waves);
+	}
+	
+	@Test
+	void cycleFallsBackToSingleWave() {
+		var db = container("app", "db");
+		var first = container("app", "first", "second", "db");
+		var second = container("app", "second", "first");
+		
+		var waves = ContainerWaves.startOrder(List.of(first, second, db));
+		
+		assertEquals(List.of(List.of(db), List.of(first, second)), waves);
+	}
+	
+	@Test
+	void dependenciesAcrossProjectsAreIgnored() {
+		var db = container("other", "db");
+		var web = container("app", "web", "db");
+		
+		var waves = ContainerWaves.startOrder(List.of(web, db));
+		
+		assertEquals(List.of(List.of(web, db)), waves);
+	}
+	
+	@Test
+	void dependenciesOnMissingContainersAreIgnored() {
+		var web = container("app", "web", "db");
+		var worker = container("app", "worker", "web");
+		
+		var waves = ContainerWaves.startOrder(List.of(worker, web));
+		
+		assertEquals(List.of(List.of(web), List.of(worker)), waves);
+	}
+	
+	@Test
+	void containersWithoutProjectHaveNoDependencies() {
+		var db = container("app", "db");
+		var standalone = new SalvageContainer("standalone", "standalone", Optional.empty(), Optional.of("web"), Set.of("db"), List.of(),
+				SalvageContainer.ContainerAction.STOP, Optional.empty(), Optional.empty(), new ExitCodeBehaviour.FailIfNonZero(), Optional.empty(), Duration.ZERO);
+		
+		var waves = ContainerWaves.startOrder(List.of(standalone, db));
+		
+		assertEquals(List.of(List.of(standalone, db)), waves);
+	}
+	
+	@Test
+	void stopOrderReversesStartOrder() {
+		var db = container("app", "db");
+		var web = container("app", "web", "db");
+		var proxy = container("app", "proxy", "web");
+		var containers = List.of(proxy, db, web);
+		
+		var stop = ContainerWaves.stopOrder(containers);
+		
+		assertEquals(List.of(List.of(proxy), List.of(web), List.of(db)), stop);
+		assertEquals(ContainerWaves.startOrder(containers).reversed(), stop);
+	}
+}
@@ -0,0 +1,131 @@
+package de.chrisliebaer.salvage.grouping;
+
+import de.chrisliebaer.salvage.entity.BackupMeta;
+import de.chrisliebaer.salvage.entity.ExitCodeBehaviour;
+import de.chrisliebaer.salvage.entity.SalvageContainer;
+import de.chrisliebaer.salvage.entity.SalvageCrane;
+import de.chrisliebaer.salvage.entity.SalvageTide;
+import de.chrisliebaer.salvage.entity.SalvageVolume;
+import de.chrisliebaer.salvage.planning.BackupJobs;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class GroupSplitterTest {
+	
+	private static final SalvageCrane CRANE = SalvageCrane.fromLabels("crane", "salvage.crane.crane", Map.of("salvage.crane.crane.image", "crane"));
+	
+	private final Map<SalvageVolume, Duration> durations = new HashMap<>();
+	
+	private SalvageVolume volume(String name, long minutes) {
+		var volume = new SalvageVolume(name, new BackupMeta.VolumeMeta(name, Map.of(), null, Map.of()), Optional.empty(), 1, Optional.empty());
+		durations.put(volume, Duration.ofMinutes(minutes));
+		return volume;
+	}
+	
+	private static SalvageContainer container(String id, Optional<Duration> maxDowntime, SalvageVolume... volumes) {
+		return new SalvageContainer(id, id, Optional.empty(), Optional.empty(), Set.of(), List.of(volumes), SalvageContainer.ContainerAction.STOP, Optional.empty(),
+				Optional.empty(), new ExitCodeBehaviour.FailIfNonZero(), maxDowntime, Duration.ZERO);
+	}
+	
+	private static BackupGrouping.Group group(List<SalvageContainer> containers, SalvageVolume... volumes) {
+		var group = new BackupGrouping.Group();
+		containers.forEach(group::addContainer);
+		for (var volume : volumes)
+			group.addVolume(volume);
+		return group;
+	}
+	
+	private GroupSplitter splitter(int maxVolumes, Optional<Duration> maxDuration, Duration restartCost, int slots) {
+		var routing = new HashMap<SalvageVolume, List<SalvageCrane>>();
+		durations.keySet().forEach(volume -> routing.put(volume, List.of(CRANE)));
+		var jobs = new BackupJobs(SalvageTide.CraneMode.PARALLEL, routing, Map.of(), durations::get);
+		return new GroupSplitter(new SalvageTide.GroupingBounds(maxVolumes, maxDuration, restartCost), slots, jobs);
+	}
+	
+	private static List<List<SalvageVolume>> volumes(List<BackupGrouping.Group> groups) {
+		return groups.stream().map(BackupGrouping.Group::volumes).toList();
+	}
+	
+	@Test
+	void groupWithinBoundsIsNotSplit() {
+		var first = volume("first", 10);
+		var second = volume("second", 10);
+		var group = group(List.of(container("a", Optional.empty(), first), container("b", Optional.empty(), second)), first, second);
+		
+		var groups = splitter(2, Optional.of(Duration.ofMinutes(20)), Duration.ZERO, 1).split(group);
+		
+		assertEquals(1, groups.size());
+		assertSame(group, groups.getFirst());
+	}
+	
+	@Test
+	void splitReducesDowntimeOfSeparateContainers() {
+		var first = volume("first", 10);
+		var second = volume("second", 10);
+		var shared = container("shared", Optional.empty(), first, second);
+		var group = group(List.of(container("a", Optional.empty(), first), container("b", Optional.empty(), second), shared), first, second);
+		
+		var groups = splitter(1, Optional.empty(), Duration.ZERO, 1).split(group);
+		
+		assertEquals(List.of(List.of(first), List.of(second)), volumes(groups));
+	}
+	
+	@Test
+	void splitIsRejectedIfRestartsIncreaseDowntime() {
+		// unsplit, all three containers are down for 20m plus one restart, split, four container cycles of 10m plus restart are needed
+		var first = volume("first", 10);
+		var second = volume("second", 10);
+		var shared = container("shared", Optional.empty(), first, second);
+		var group = group(List.of(container("a", Optional.empty(), first), container("b", Optional.empty(), second), shared), first, second);
+		
+		var groups = splitter(1, Optional.empty(), Duration.ofMinutes(30), 1).split(group);
+		
+		assertEquals(1, groups.size());
+		assertSame(group, groups.getFirst());
+	}
+	
+	@Test
+	void budgetSplitsGroupThatExceedsBudget() {
+		var first = volume("first", 10);
+		var second = volume("second", 10);
+		var group = group(List.of(container("a", Optional.of(Duration.ofMinutes(15)), first, second)), first, second);
+		
+		var groups = splitter(Integer.MAX_VALUE, Optional.empty(), Duration.ZERO, 1).splitForBudget(group);
+		
+		assertEquals(List.of(List.of(first), List.of(second)), volumes(groups));
+	}
+	
+	@Test
+	void budgetDoesNotSplitIfWindowWouldNotShrink() {
+		// with enough slots, the budgeted container is down for as long as its own volume takes, with or without the other volume
+		var own = volume("own", 20);
+		var other = volume("other", 5);
+		var group = group(List.of(container("a", Optional.of(Duration.ofMinutes(15)), own), container("b", Optional.empty(), other)), own, other);
+		
+		var groups = splitter(Integer.MAX_VALUE, Optional.empty(), Duration.ZERO, 2).splitForBudget(group);
+		
+		assertEquals(1, groups.size());
+		assertSame(group, groups.getFirst());
+	}
+	
+	@Test
+	void budgetWithinRestartCostIsNotSplit() {
+		var first = volume("first", 10);
+		var second = volume("second", 10);
+		var group = group(List.of(container("a", Optional.of(Duration.ofMinutes(10)), first, second)), first, second);
+		
+		var groups = splitter(Integer.MAX_VALUE, Optional.empty(), Duration.ofMinutes(10), 1).splitForBudget(group);
+		
+		assertEquals(1, groups.size());
+		assertSame(group, groups.getFirst());
+	}
+}
@@ -0,0 +1,48 @@
+package de.chrisliebaer.salvage.planning;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MakespanTest {
+	
+	private static List<Duration> minutes(long... values) {
+		return Arrays.stream(values).mapToObj(Duration::ofMinutes).toList();
+	}
+	
+	@Test
+	void emptyJobsTakeNoTime() {
+		assertEquals(Duration.ZERO, Makespan.of(List.of(), 4));
+	}
+	
+	@Test
+	void singleSlotRunsJobsInSequence() {
+		assertEquals(Duration.ofMinutes(10), Makespan.of(minutes(1, 2, 3, 4), 1));
+	}
+	
+	@Test
+	void missingSlotsAreTreatedAsSingleSlot() {
+		assertEquals(Duration.ofMinutes(10), Makespan.of(minutes(1, 2, 3, 4), 0));
+	}
+	
+	@Test
+	void moreSlotsThanJobsIsBoundByLongestJob() {
+		assertEquals(Duration.ofMinutes(7), Makespan.of(minutes(7, 1, 3), 8));
+	}
+	
+	@Test
+	void longestJobsAreHandedOutFirst() {
+		// 3 and 3 start first, the three jobs of 2 fill whichever slot is free first
+		assertEquals(Duration.ofMinutes(7), Makespan.of(minutes(2, 3, 2, 3, 2), 2));
+	}
+	
+	@Test
+	void shortJobsFillUpSlotsOfLongJobs() {
+		// 6 occupies one slot, while 3, 2 and 1 share the other one
+		assertEquals(Duration.ofMinutes(6), Makespan.of(minutes(1, 3, 6, 2), 2));
+	}
+}
@@ -0,0 +1,96 @@
+package de.chrisliebaer.salvage.reporting;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutputBufferTest {
+	
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	@Test
+	void reassemblesLinesSplitAcrossFrames() {
+		var lines = new ArrayList<String>();
+		var buffer = new OutputBuffer("test", 1024, line -> lines.add(line.toString()));
+		
+		buffer.append(bytes("hel"));
+		buffer.append(bytes("lo\r\nwor"));
+		buffer.append(bytes("ld\n\n  \nlast"));
+		assertEquals(2, lines.size());
+		
+		// unterminated output is only completed once the output has ended
+		buffer.flush();
+		assertEquals(List.of("hello", "world", "last"), lines);
+	}
+	
+	@Test
+	void keepsOnlyLinesNotConsumedByListener() {
+		var buffer = new OutputBuffer("test", 1024, line -> line.startsWith(bytes("##")));
+		
+		buffer.append(bytes("first\n##protocol\nsecond\nthird\n"));
+		assertEquals("first\nsecond\nthird", buffer.lastLines(10));
+		assertEquals("second\nthird", buffer.lastLines(2));
+	}
+	
+	@Test
+	void overwritesOldestOutputOnceFull() {
+		var buffer = new OutputBuffer("test", 16, line -> false);
+		
+		buffer.append(bytes("aaaaaa\nbbbbbb\ncccccc\n"));
+		
+		// oldest line has been partially overwritten and is dropped
+		assertEquals("bbbbbb\ncccccc", buffer.lastLines(10));
+	}
+	
+	@Test
+	void emptyBufferHasNoLines() {
+		var buffer = new OutputBuffer("test", 16, line -> false);
+		assertEquals("", buffer.lastLines(5));
+	}
+	
+	@Test
+	void truncatesLongLines() {
+		var lines = new ArrayList<String>();
+		var buffer = new OutputBuffer("test", 32 * 1024, line -> {
+			lines.add(line.toString());
+			return false;
+		});
+		
+		buffer.append(bytes("x".repeat(100_000) + "\nnext\n"));
+		assertEquals(2, lines.size());
+		assertTrue(lines.getFirst().length() < 100_000);
+		assertEquals("next", lines.get(1));
+		assertTrue(buffer.lastLines(2).endsWith("x [truncated]\nnext"));
+	}
+	
+	@Test
+	void suppressesLinesBeyondLogLimit() {
+		var now = new long[1];
+		var permitted = new int[1];
+		var buffer = new OutputBuffer("test", 0, line -> {
+			if (line.permitLog())
+				permitted[0]++;
+			return true;
+		}, () -> now[0]);
+		
+		buffer.append(bytes("line\n".repeat(500)));
+		assertEquals(50, permitted[0]);
+		
+		// lines are permitted again once the next second has started
+		now[0] += 999_999_999L;
+		buffer.append(bytes("line\n"));
+		assertEquals(50, permitted[0]);
+		
+		now[0] += 1;
+		buffer.append(bytes("line\n".repeat(60)));
+		buffer.flush();
+		assertEquals(100, permitted[0]);
+	}
+}
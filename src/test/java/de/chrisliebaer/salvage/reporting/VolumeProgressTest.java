@@ -0,0 +1,77 @@
+package de.chrisliebaer.salvage.reporting;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VolumeProgressTest {
+	
+	private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+	
+	@Test
+	void noSummaryWithoutReport() {
+		var progress = new VolumeProgress();
+		progress.start(START);
+		assertTrue(progress.summary().isEmpty());
+	}
+	
+	@Test
+	void missingValuesKeepPreviousReport() {
+		var progress = new VolumeProgress();
+		progress.start(START);
+		progress.update(Optional.of("scan"), Optional.of(100L), Optional.of(1000L), Optional.of(5L), Optional.empty(), START.plusSeconds(1));
+		progress.update(Optional.of("upload"), Optional.of(400L), Optional.empty(), Optional.empty(), Optional.of(50L), START.plusSeconds(4));
+		
+		var summary = progress.summary().orElseThrow();
+		assertEquals(Optional.of("upload"), summary.phase());
+		assertEquals(400, summary.bytesProcessed());
+		assertEquals(1000, summary.bytesTotal());
+		assertEquals(5, summary.filesProcessed());
+		assertEquals(50, summary.bytesUploaded());
+		assertEquals(Duration.ofSeconds(4), summary.elapsed());
+	}
+	
+	@Test
+	void derivesThroughputAndRemainingTime() {
+		var summary = new VolumeProgress.Summary(Optional.empty(), 400, 1000, 0, 0, Duration.ofSeconds(4));
+		
+		assertEquals(100.0, summary.throughput().orElseThrow(), 0.001);
+		assertEquals(Duration.ofSeconds(6), summary.eta().orElseThrow());
+	}
+	
+	@Test
+	void noRemainingTimeWithoutTotalOrProgress() {
+		assertTrue(new VolumeProgress.Summary(Optional.empty(), 400, 0, 0, 0, Duration.ofSeconds(4)).eta().isEmpty());
+		assertTrue(new VolumeProgress.Summary(Optional.empty(), 0, 1000, 0, 0, Duration.ofSeconds(4)).eta().isEmpty());
+		assertTrue(new VolumeProgress.Summary(Optional.empty(), 400, 1000, 0, 0, Duration.ZERO).throughput().isEmpty());
+	}
+	
+	@Test
+	void combinesShards() {
+		var combined = VolumeProgress.Summary.combine(List.of(
+				new VolumeProgress.Summary(Optional.of("upload"), 100, 1000, 10, 20, Duration.ofSeconds(5)),
+				new VolumeProgress.Summary(Optional.of("upload"), 300, 2000, 30, 40, Duration.ofSeconds(8))));
+		
+		assertEquals(Optional.of("upload"), combined.phase());
+		assertEquals(400, combined.bytesProcessed());
+		assertEquals(3000, combined.bytesTotal());
+		assertEquals(40, combined.filesProcessed());
+		assertEquals(60, combined.bytesUploaded());
+		assertEquals(Duration.ofSeconds(8), combined.elapsed());
+	}
+	
+	@Test
+	void combinedPhaseIsDroppedIfShardsDisagree() {
+		var combined = VolumeProgress.Summary.combine(List.of(
+				new VolumeProgress.Summary(Optional.of("scan"), 0, 0, 0, 0, Duration.ZERO),
+				new VolumeProgress.Summary(Optional.of("upload"), 0, 0, 0, 0, Duration.ZERO)));
+		
+		assertTrue(combined.phase().isEmpty());
+	}
+}